@@ -0,0 +1,467 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import li.zeitgeist.api.error.*;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous Zeitgeist API methods.
+ * 
+ * Wraps a (thread safe) API instance and runs every method on an
+ * executor, the methods return immediately with a Future of the
+ * result. Optionally a callback is notified on completion.
+ * 
+ * By default every lane has its own thread pool as large as its
+ * concurrency limit, so uploads can't occupy the threads of reads.
+ * The deadline of the thread submitting a call applies to it, and
+ * so does its cancellation token: cancelling the token or the
+ * returned future aborts the requests of the call.
+ */
+public class AsyncZeitgeistApi {
+    /**
+     * Notified with the result or the error of an asynchronous call.
+     */
+    public interface Callback<T> {
+        public void onSuccess(T result);
+        public void onError(ZeitgeistError error);
+    }
+
+    /**
+     * Synchronous API instance doing the actual requests.
+     */
+    private final ZeitgeistApi api;
+    /**
+     * Executor per lane the calls are running on.
+     */
+    private final Map<Lane, ExecutorService> executors =
+        new EnumMap<Lane, ExecutorService>(Lane.class);
+
+    /**
+     * Construct with a thread pool per lane as large as its concurrency limit.
+     * @param api
+     */
+    public AsyncZeitgeistApi(ZeitgeistApi api) {
+        this.api = api;
+        for (Lane lane : Lane.values()) {
+            executors.put(lane, Executors.newFixedThreadPool(
+                    api.getConcurrencyLimiter(lane).getMaxLimit(),
+                    new DaemonThreadFactory("zeitgeist-async-" + lane.name().toLowerCase())));
+        }
+    }
+
+    /**
+     * Construct with a executor provided by the caller, shared by all lanes.
+     * @param api
+     * @param executor
+     */
+    public AsyncZeitgeistApi(ZeitgeistApi api, ExecutorService executor) {
+        this.api = api;
+        for (Lane lane : Lane.values()) {
+            executors.put(lane, executor);
+        }
+    }
+
+    /**
+     * The synchronous API instance used by this instance.
+     * @return api instance
+     */
+    public ZeitgeistApi getApi() {
+        return api;
+    }
+
+    /**
+     * Stops the executors, calls already submitted are completed.
+     */
+    public void shutdown() {
+        for (ExecutorService executor : executors.values()) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Upload multiple files at once with tags and announce.
+     * @see ZeitgeistApi#createByFiles(List, String, boolean, ZeitgeistApi.OnProgressListener)
+     */
+    public Future<List<Item>> createByFiles(final List<File> files, final String tags,
+            final boolean announce, final ZeitgeistApi.OnProgressListener listener,
+            Callback<List<Item>> callback) {
+        return submit(Lane.UPLOAD, new Call<List<Item>>(callback) {
+            protected List<Item> execute() throws ZeitgeistError {
+                return api.createByFiles(files, tags, announce, listener);
+            }
+        });
+    }
+
+    /**
+     * Upload multiple files at once with tags and announce.
+     * @see ZeitgeistApi#createByFiles(List, String, boolean)
+     */
+    public Future<List<Item>> createByFiles(List<File> files, String tags, boolean announce) {
+        return createByFiles(files, tags, announce, null, null);
+    }
+
+    /**
+     * Multiple remote upload/create by image/video/audio url with tags and announce.
+     * @see ZeitgeistApi#createByUrls(List, String, boolean)
+     */
+    public Future<List<Item>> createByUrls(final List<String> urls, final String tags,
+            final boolean announce, Callback<List<Item>> callback) {
+        return submit(Lane.UPLOAD, new Call<List<Item>>(callback) {
+            protected List<Item> execute() throws ZeitgeistError {
+                return api.createByUrls(urls, tags, announce);
+            }
+        });
+    }
+
+    /**
+     * Multiple remote upload/create by image/video/audio url with tags and announce.
+     * @see ZeitgeistApi#createByUrls(List, String, boolean)
+     */
+    public Future<List<Item>> createByUrls(List<String> urls, String tags, boolean announce) {
+        return createByUrls(urls, tags, announce, null);
+    }
+
+    /**
+     * Query for a single item instance by ID.
+     * @see ZeitgeistApi#item(int)
+     */
+    public Future<Item> item(final int id, Callback<Item> callback) {
+        return submit(Lane.READ, new Call<Item>(callback) {
+            protected Item execute() throws ZeitgeistError {
+                return api.item(id);
+            }
+        });
+    }
+
+    /**
+     * Query for a single item instance by ID.
+     * @see ZeitgeistApi#item(int)
+     */
+    public Future<Item> item(int id) {
+        return item(id, null);
+    }
+
+    /**
+     * Lists items that come before or after specified IDs.
+     * @see ZeitgeistApi#list(int, int)
+     */
+    public Future<List<Item>> list(final int before, final int after,
+            Callback<List<Item>> callback) {
+        return submit(Lane.READ, new Call<List<Item>>(callback) {
+            protected List<Item> execute() throws ZeitgeistError {
+                return api.list(before, after);
+            }
+        });
+    }
+
+    /**
+     * Lists items that come before or after specified IDs.
+     * @see ZeitgeistApi#list(int, int)
+     */
+    public Future<List<Item>> list(int before, int after) {
+        return list(before, after, null);
+    }
+
+    /**
+     * Lists the newest/frontpage items.
+     * @see ZeitgeistApi#list()
+     */
+    public Future<List<Item>> list() {
+        return list(-1, -1, null);
+    }
+
+    /**
+     * Lists items that come before or after specified IDs into the columns of a page.
+     * @see ZeitgeistApi#listPage(int, int)
+     */
+    public Future<ItemPage> listPage(final int before, final int after,
+            Callback<ItemPage> callback) {
+        return submit(Lane.READ, new Call<ItemPage>(callback) {
+            protected ItemPage execute() throws ZeitgeistError {
+                return api.listPage(before, after);
+            }
+        });
+    }
+
+    /**
+     * Lists items that come before or after specified IDs into the columns of a page.
+     * @see ZeitgeistApi#listPage(int, int)
+     */
+    public Future<ItemPage> listPage(int before, int after) {
+        return listPage(before, after, null);
+    }
+
+    /**
+     * Search for tags by partial name.
+     * @see ZeitgeistApi#searchTags(String)
+     */
+    public Future<List<Tag>> searchTags(final String query, Callback<List<Tag>> callback) {
+        return submit(Lane.READ, new Call<List<Tag>>(callback) {
+            protected List<Tag> execute() throws ZeitgeistError {
+                return api.searchTags(query);
+            }
+        });
+    }
+
+    /**
+     * Search for tags by partial name.
+     * @see ZeitgeistApi#searchTags(String)
+     */
+    public Future<List<Tag>> searchTags(String query) {
+        return searchTags(query, null);
+    }
+
+    /**
+     * List items that are associated with given tag and come after or before specified IDs.
+     * @see ZeitgeistApi#listByTag(String, int, int)
+     */
+    public Future<List<Item>> listByTag(final String tag, final int before, final int after,
+            Callback<List<Item>> callback) {
+        return submit(Lane.READ, new Call<List<Item>>(callback) {
+            protected List<Item> execute() throws ZeitgeistError {
+                return api.listByTag(tag, before, after);
+            }
+        });
+    }
+
+    /**
+     * List items that are associated with given tag and come after or before specified IDs.
+     * @see ZeitgeistApi#listByTag(String, int, int)
+     */
+    public Future<List<Item>> listByTag(String tag, int before, int after) {
+        return listByTag(tag, before, after, null);
+    }
+
+    /**
+     * List newest items that are associated with given tag.
+     * @see ZeitgeistApi#listByTag(String)
+     */
+    public Future<List<Item>> listByTag(String tag) {
+        return listByTag(tag, -1, -1, null);
+    }
+
+    /**
+     * List items that are associated with given tag into the columns of a page.
+     * @see ZeitgeistApi#listByTagPage(String, int, int)
+     */
+    public Future<ItemPage> listByTagPage(final String tag, final int before, final int after,
+            Callback<ItemPage> callback) {
+        return submit(Lane.READ, new Call<ItemPage>(callback) {
+            protected ItemPage execute() throws ZeitgeistError {
+                return api.listByTagPage(tag, before, after);
+            }
+        });
+    }
+
+    /**
+     * List items that are associated with given tag into the columns of a page.
+     * @see ZeitgeistApi#listByTagPage(String, int, int)
+     */
+    public Future<ItemPage> listByTagPage(String tag, int before, int after) {
+        return listByTagPage(tag, before, after, null);
+    }
+
+    /**
+     * Update the tags of a item.
+     * @see ZeitgeistApi#update(int, String[], String[])
+     */
+    public Future<Item> update(final int id, final String[] addTags, final String[] delTags,
+            Callback<Item> callback) {
+        return submit(Lane.MUTATION, new Call<Item>(callback) {
+            protected Item execute() throws ZeitgeistError {
+                return api.update(id, addTags, delTags);
+            }
+        });
+    }
+
+    /**
+     * Update the tags of a item.
+     * @see ZeitgeistApi#update(int, String[], String[])
+     */
+    public Future<Item> update(int id, String[] addTags, String[] delTags) {
+        return update(id, addTags, delTags, null);
+    }
+
+    /**
+     * Update the tags of a item.
+     * @see ZeitgeistApi#update(int, String)
+     */
+    public Future<Item> update(final int id, final String tags, Callback<Item> callback) {
+        return submit(Lane.MUTATION, new Call<Item>(callback) {
+            protected Item execute() throws ZeitgeistError {
+                return api.update(id, tags);
+            }
+        });
+    }
+
+    /**
+     * Update the tags of a item.
+     * @see ZeitgeistApi#update(int, String)
+     */
+    public Future<Item> update(int id, String tags) {
+        return update(id, tags, null);
+    }
+
+    /**
+     * Delete a item specified by ID.
+     * @see ZeitgeistApi#delete(int)
+     */
+    public Future<Integer> delete(final int id, Callback<Integer> callback) {
+        return submit(Lane.MUTATION, new Call<Integer>(callback) {
+            protected Integer execute() throws ZeitgeistError {
+                return api.delete(id);
+            }
+        });
+    }
+
+    /**
+     * Delete a item specified by ID.
+     * @see ZeitgeistApi#delete(int)
+     */
+    public Future<Integer> delete(int id) {
+        return delete(id, null);
+    }
+
+    /**
+     * Upvote (+1) an item specified by ID.
+     * @see ZeitgeistApi#upvote(int, boolean)
+     */
+    public Future<Integer> upvote(final int id, final boolean remove,
+            Callback<Integer> callback) {
+        return submit(Lane.MUTATION, new Call<Integer>(callback) {
+            protected Integer execute() throws ZeitgeistError {
+                return api.upvote(id, remove);
+            }
+        });
+    }
+
+    /**
+     * Upvote (+1) an item specified by ID.
+     * @see ZeitgeistApi#upvote(int, boolean)
+     */
+    public Future<Integer> upvote(int id, boolean remove) {
+        return upvote(id, remove, null);
+    }
+
+    /**
+     * Upvote (+1) an item specified by ID.
+     * @see ZeitgeistApi#upvote(int)
+     */
+    public Future<Integer> upvote(int id) {
+        return upvote(id, false, null);
+    }
+
+    /**
+     * Request the api secret, useful for testing.
+     * @see ZeitgeistApi#getApiSecret()
+     */
+    public Future<String> getApiSecret(Callback<String> callback) {
+        return submit(Lane.READ, new Call<String>(callback) {
+            protected String execute() throws ZeitgeistError {
+                return api.getApiSecret();
+            }
+        });
+    }
+
+    /**
+     * Request the api secret, useful for testing.
+     * @see ZeitgeistApi#getApiSecret()
+     */
+    public Future<String> getApiSecret() {
+        return getApiSecret(null);
+    }
+
+    /**
+     * Submit a call to the executor of its lane.
+     * 
+     * Cancelling the future cancels the token of the call, which
+     * aborts its requests in flight and stops uploads. The token is
+     * linked to the token of the submitting thread.
+     * 
+     * @param lane
+     * @param call
+     * @return future of the result
+     */
+    private <T> Future<T> submit(Lane lane, final Call<T> call) {
+        FutureTask<T> future = new FutureTask<T>(call) {
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    call.token.cancel();
+                }
+                return cancelled;
+            }
+        };
+        try {
+            executors.get(lane).execute(future);
+        } catch (RejectedExecutionException e) {
+            call.token.unlink();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * A API call that notifies the callback (if any) on completion.
+     */
+    private static abstract class Call<T> implements Callable<T> {
+        private final Callback<T> callback;
+        private final Deadline deadline = Deadline.current();
+        private final CancellationToken token =
+            new CancellationToken(CancellationToken.current());
+
+        public Call(Callback<T> callback) {
+            this.callback = callback;
+        }
+
+        protected abstract T execute() throws ZeitgeistError;
+
+        public T call() throws ZeitgeistError {
+            T result;
+            Deadline previous = Deadline.set(deadline);
+            CancellationToken previousToken = CancellationToken.set(token);
+            try {
+                result = execute();
+            } catch (ZeitgeistError e) {
+                if (callback != null) {
+                    callback.onError(e);
+                }
+                throw e;
+            } finally {
+                Deadline.set(previous);
+                CancellationToken.set(previousToken);
+                token.unlink();
+            }
+            if (callback != null) {
+                callback.onSuccess(result);
+            }
+            return result;
+        }
+    }
+}
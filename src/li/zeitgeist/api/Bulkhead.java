@@ -0,0 +1,208 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Isolated resources of a lane. (package protected)
+ * 
+ * Every lane has its own connection pool and HTTP client, a lane
+ * that exhausted its connections (like a long running upload)
+ * does not block requests of other lanes.
+ */
+class Bulkhead {
+    /**
+     * Parameter of the timeout waiting for a pooled connection, in
+     * milliseconds. The key read by the request director of httpclient,
+     * named ClientPNames.CONN_MANAGER_TIMEOUT since httpclient 4.2.
+     */
+    static final String CONN_MANAGER_TIMEOUT = "http.conn-manager.timeout";
+
+    /**
+     * Lane the resources belong to.
+     */
+    private final Lane lane;
+    /**
+     * Pooling connection manager of this lane.
+     */
+    private final PooledClientConnManager connectionManager;
+    /**
+     * HTTP client using the connection pool of this lane.
+     */
+    private final DefaultHttpClient httpClient;
+
+    /**
+     * Construct the resources of a lane.
+     * @param lane
+     * @param maxConnections maximum number of pooled connections.
+     */
+    public Bulkhead(Lane lane, int maxConnections) {
+        this.lane = lane;
+        connectionManager = new PooledClientConnManager(maxConnections, maxConnections);
+        httpClient = new DefaultHttpClient(connectionManager);
+        // retries are performed by the retry policy
+        httpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+    }
+
+    /**
+     * The lane of this bulkhead.
+     * @return lane
+     */
+    public Lane getLane() {
+        return lane;
+    }
+
+    /**
+     * The HTTP client of this lane.
+     * @return client instance
+     */
+    public HttpClient getClient() {
+        return httpClient;
+    }
+
+    /**
+     * The parameters of the HTTP client of this lane, like timeouts.
+     * @return client parameters
+     */
+    public HttpParams getParams() {
+        return httpClient.getParams();
+    }
+
+    /**
+     * Set the timeout waiting for a connection of the pool.
+     * @param timeout in milliseconds, 0 for none.
+     */
+    public void setConnectionManagerTimeout(long timeout) {
+        httpClient.getParams().setLongParameter(CONN_MANAGER_TIMEOUT, timeout);
+    }
+
+    /**
+     * The timeout waiting for a connection of the pool.
+     * @return timeout in milliseconds, 0 for none.
+     */
+    public long getConnectionManagerTimeout() {
+        return httpClient.getParams().getLongParameter(CONN_MANAGER_TIMEOUT, 0);
+    }
+
+    /**
+     * Set the maximum number of connections of this lane.
+     * @param max
+     */
+    public void setMaxConnections(int max) {
+        connectionManager.setMaxTotal(max);
+        connectionManager.setDefaultMaxPerRoute(max);
+    }
+
+    /**
+     * The maximum number of connections of this lane.
+     * @return max connections
+     */
+    public int getMaxConnections() {
+        return connectionManager.getMaxTotal();
+    }
+
+    /**
+     * Returns a snapshot of the connection pool of this lane.
+     * @return pool stats
+     */
+    public PoolStats getStats() {
+        return connectionManager.getStats();
+    }
+
+    /**
+     * The pooling connection manager of this lane.
+     * @return connection manager
+     */
+    public PooledClientConnManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * Open connections to the host of the URI and put them in the pool.
+     * 
+     * The connections are leased at once so each one is opened,
+     * including DNS lookup, TCP and TLS handshake. Stops at the
+     * first connection that fails to open.
+     * 
+     * @param uri of the server.
+     * @param connections number of connections to open.
+     * @return number of connections opened.
+     */
+    public int warmUp(URI uri, int connections) {
+        HttpHost target = URIUtils.extractHost(uri);
+        HttpContext context = new BasicHttpContext();
+        long timeout = getConnectionManagerTimeout();
+        List<ManagedClientConnection> leased = new ArrayList<ManagedClientConnection>();
+        int opened = 0;
+        try {
+            // the same route the client determines for requests
+            HttpRoute route = httpClient.getRoutePlanner().determineRoute(target,
+                    new HttpGet(uri), context);
+            int count = Math.min(connections, getMaxConnections());
+            for (int i = 0; i < count; i++) {
+                ManagedClientConnection connection = connectionManager
+                    .requestConnection(route, null).getConnection(timeout, TimeUnit.MILLISECONDS);
+                leased.add(connection);
+                if (!connection.isOpen()) {
+                    connection.open(route, context, httpClient.getParams());
+                }
+                connection.markReusable();
+                opened++;
+            }
+        } catch (ConnectionPoolTimeoutException e) {
+            // pool exhausted by requests in flight
+        } catch (IOException e) {
+            // server not reachable, requests will report it
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (HttpException e) {
+            // no route to the host of the URI
+        } finally {
+            for (ManagedClientConnection connection : leased) {
+                connectionManager.releaseConnection(connection, -1, TimeUnit.MILLISECONDS);
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Closes all pooled connections of this lane.
+     */
+    public void shutdown() {
+        connectionManager.shutdown();
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import li.zeitgeist.api.error.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Allows to cancel the API calls of a thread from another thread.
+ * 
+ * Cancelling aborts the requests in flight at once, which closes
+ * their pooled connections and stops uploads mid-stream. The
+ * cancelled calls throw a CancelledError.
+ * 
+ * A token linked to a parent token is also cancelled with the
+ * parent, it can be cancelled on its own without the parent.
+ * 
+ * <pre>
+ * CancellationToken token = new CancellationToken();
+ * CancellationToken previous = CancellationToken.set(token);
+ * try {
+ *     api.list(); // token.cancel() from another thread aborts it
+ * } finally {
+ *     CancellationToken.set(previous);
+ * }
+ * </pre>
+ */
+public class CancellationToken {
+    /**
+     * Token of the calls the current thread is working on.
+     */
+    private static final ThreadLocal<CancellationToken> current =
+        new ThreadLocal<CancellationToken>();
+
+    /**
+     * True after the token was cancelled.
+     */
+    private volatile boolean cancelled = false;
+    /**
+     * Requests in flight that are aborted on cancellation.
+     */
+    private final Set<TransportRequest> requests = new HashSet<TransportRequest>();
+    /**
+     * Linked tokens that are cancelled with this token, guarded by requests.
+     */
+    private final Set<CancellationToken> children = new HashSet<CancellationToken>();
+    /**
+     * Parent token this token is cancelled with, or null.
+     */
+    private final CancellationToken parent;
+
+    /**
+     * Construct a token.
+     */
+    public CancellationToken() {
+        this(null);
+    }
+
+    /**
+     * Construct a token that is also cancelled with the parent token.
+     * @param parent or null.
+     */
+    public CancellationToken(CancellationToken parent) {
+        this.parent = parent;
+        if (parent != null) {
+            parent.link(this);
+        }
+    }
+
+    /**
+     * The token of the current thread.
+     * @return token or null if the thread has none.
+     */
+    public static CancellationToken current() {
+        return current.get();
+    }
+
+    /**
+     * Set the token of the current thread.
+     * @param token null to remove the token.
+     * @return the previous token of the thread, or null.
+     */
+    public static CancellationToken set(CancellationToken token) {
+        CancellationToken previous = current.get();
+        if (token == null) {
+            current.remove();
+        }
+        else {
+            current.set(token);
+        }
+        return previous;
+    }
+
+    /**
+     * Cancel the calls and abort their requests in flight.
+     */
+    public void cancel() {
+        TransportRequest[] inFlight;
+        CancellationToken[] linked;
+        synchronized (requests) {
+            if (cancelled) return;
+            cancelled = true;
+            inFlight = requests.toArray(new TransportRequest[requests.size()]);
+            requests.clear();
+            linked = children.toArray(new CancellationToken[children.size()]);
+            children.clear();
+        }
+        for (TransportRequest request : inFlight) {
+            request.abort();
+        }
+        for (CancellationToken child : linked) {
+            child.cancel();
+        }
+        unlink();
+    }
+
+    /**
+     * True if the token was cancelled.
+     * @return true if cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throws if the token was cancelled.
+     * @throws CancelledError
+     */
+    public void checkCancelled() throws CancelledError {
+        if (cancelled) {
+            throw new CancelledError();
+        }
+    }
+
+    /**
+     * Abort the request on cancellation, until unregistered. (package protected)
+     * 
+     * A request registered after cancellation is aborted at once.
+     * 
+     * @param request
+     */
+    void register(TransportRequest request) {
+        synchronized (requests) {
+            if (!cancelled) {
+                requests.add(request);
+                return;
+            }
+        }
+        request.abort();
+    }
+
+    /**
+     * Stop to abort the completed request on cancellation. (package protected)
+     * @param request
+     */
+    void unregister(TransportRequest request) {
+        synchronized (requests) {
+            requests.remove(request);
+        }
+    }
+
+    /**
+     * Stop to be cancelled with the parent token. (package protected)
+     * 
+     * Called once the calls of a linked token completed, so a long
+     * living parent does not keep it.
+     */
+    void unlink() {
+        if (parent != null) {
+            synchronized (parent.requests) {
+                parent.children.remove(this);
+            }
+        }
+    }
+
+    /**
+     * Cancel the child token with this token, at once if cancelled already.
+     * @param child
+     */
+    private void link(CancellationToken child) {
+        synchronized (requests) {
+            if (!cancelled) {
+                children.add(child);
+                return;
+            }
+        }
+        child.cancel();
+    }
+}
@@ -0,0 +1,382 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+/**
+ * Circuit breaker of an endpoint family.
+ * 
+ * Records the outcome of the recent calls in a sliding window. If
+ * the rate of failed or slow calls reaches its threshold the circuit
+ * opens and calls are rejected without a request. After the open
+ * duration a few trial calls are let through (half open), if they
+ * succeed the circuit closes again, otherwise it opens again.
+ * 
+ * Each endpoint family has its own breaker and thresholds, see
+ * {@link #forEndpoint(Endpoint)}. Uploads legitimately take long,
+ * the breaker of CREATE does not consider slow calls.
+ */
+public class CircuitBreaker {
+    /**
+     * State of the circuit.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified if the circuit changes its state.
+     */
+    public interface OnStateChangeListener {
+        public void onStateChange(CircuitBreaker breaker, State from, State to);
+    }
+
+    /**
+     * Default rate of failed calls that opens the circuit.
+     */
+    public static final double DEFAULT_FAILURE_RATE = 0.5;
+    /**
+     * Default rate of slow calls that opens the circuit.
+     */
+    public static final double DEFAULT_SLOW_CALL_RATE = 0.8;
+    /**
+     * Default duration in milliseconds a call is considered slow after.
+     */
+    public static final long DEFAULT_SLOW_CALL_DURATION = 10000;
+    /**
+     * Slow call duration that disables the slow call rule.
+     */
+    public static final long SLOW_CALL_DISABLED = 0;
+    /**
+     * Default duration in milliseconds a mutation is considered slow after.
+     */
+    public static final long DEFAULT_MUTATION_SLOW_CALL_DURATION = 20000;
+    /**
+     * Default number of calls in the sliding window.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    /**
+     * Default number of calls recorded before the rates are evaluated.
+     */
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    /**
+     * Default duration in milliseconds the circuit stays open.
+     */
+    public static final long DEFAULT_OPEN_DURATION = 30000;
+    /**
+     * Default number of trial calls in half open state.
+     */
+    public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+    /**
+     * Name of the endpoint family, used in errors.
+     */
+    private final String name;
+    /**
+     * Rate of failed calls that opens the circuit.
+     */
+    private final double failureRate;
+    /**
+     * Rate of slow calls that opens the circuit.
+     */
+    private final double slowCallRate;
+    /**
+     * Duration a call is considered slow after.
+     */
+    private final long slowCallNanos;
+    /**
+     * Number of calls recorded before the rates are evaluated.
+     */
+    private final int minimumCalls;
+    /**
+     * Duration the circuit stays open.
+     */
+    private final long openNanos;
+    /**
+     * Number of successful trial calls that close the circuit.
+     */
+    private final int halfOpenCalls;
+
+    /**
+     * Outcomes of the recent calls, a ring buffer.
+     */
+    private final boolean[] failed;
+    /**
+     * Slowness of the recent calls, a ring buffer.
+     */
+    private final boolean[] slow;
+    /**
+     * Number of calls recorded in the window.
+     */
+    private int calls = 0;
+    /**
+     * Next position in the ring buffer.
+     */
+    private int position = 0;
+    /**
+     * Number of failed calls in the window.
+     */
+    private int failedCalls = 0;
+    /**
+     * Number of slow calls in the window.
+     */
+    private int slowCalls = 0;
+
+    /**
+     * Current state of the circuit.
+     */
+    private State state = State.CLOSED;
+    /**
+     * Time (System.nanoTime) the open state ends.
+     */
+    private long openUntil = 0;
+    /**
+     * Trial calls left to let through in half open state.
+     */
+    private int trialsLeft = 0;
+    /**
+     * Successful trial calls in half open state.
+     */
+    private int trialsSucceeded = 0;
+    /**
+     * Number of calls rejected.
+     */
+    private long rejected = 0;
+
+    /**
+     * Listener notified on state changes.
+     */
+    private volatile OnStateChangeListener listener = null;
+
+    /**
+     * Construct a circuit breaker with the default thresholds.
+     * @param name of the endpoint family.
+     */
+    public CircuitBreaker(String name) {
+        this(name, DEFAULT_FAILURE_RATE, DEFAULT_SLOW_CALL_RATE, DEFAULT_SLOW_CALL_DURATION,
+                DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_OPEN_DURATION,
+                DEFAULT_HALF_OPEN_CALLS);
+    }
+
+    /**
+     * Construct a circuit breaker with the default thresholds of an endpoint family.
+     * 
+     * Reads are slow after DEFAULT_SLOW_CALL_DURATION, updates,
+     * upvotes and deletes after DEFAULT_MUTATION_SLOW_CALL_DURATION.
+     * Creating items by upload can take minutes, so slow calls never
+     * open the breaker of CREATE, only failed ones.
+     * 
+     * @param endpoint family
+     * @return circuit breaker named after the family.
+     */
+    public static CircuitBreaker forEndpoint(Endpoint endpoint) {
+        long slowCallDuration;
+        switch (endpoint) {
+        case READ:
+            slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+            break;
+        case CREATE:
+            slowCallDuration = SLOW_CALL_DISABLED;
+            break;
+        default:
+            slowCallDuration = DEFAULT_MUTATION_SLOW_CALL_DURATION;
+        }
+        return new CircuitBreaker(endpoint.name(), DEFAULT_FAILURE_RATE, DEFAULT_SLOW_CALL_RATE,
+                slowCallDuration, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS,
+                DEFAULT_OPEN_DURATION, DEFAULT_HALF_OPEN_CALLS);
+    }
+
+    /**
+     * Construct a circuit breaker.
+     * @param name of the endpoint family.
+     * @param failureRate of the calls in the window that opens the circuit.
+     * @param slowCallRate of the calls in the window that opens the circuit.
+     * @param slowCallDuration in milliseconds a call is considered slow after,
+     *        SLOW_CALL_DISABLED to ignore the duration of calls.
+     * @param windowSize number of recent calls recorded.
+     * @param minimumCalls recorded before the rates are evaluated.
+     * @param openDuration in milliseconds the circuit stays open.
+     * @param halfOpenCalls number of trial calls before closing again.
+     */
+    public CircuitBreaker(String name, double failureRate, double slowCallRate,
+            long slowCallDuration, int windowSize, int minimumCalls, long openDuration,
+            int halfOpenCalls) {
+        this.name = name;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.slowCallNanos = slowCallDuration * 1000000L;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.openNanos = openDuration * 1000000L;
+        this.halfOpenCalls = halfOpenCalls;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    /**
+     * Name of the endpoint family.
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Set the listener notified on state changes.
+     * @param listener
+     */
+    public void setOnStateChangeListener(OnStateChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Current state of the circuit.
+     * @return state enum
+     */
+    public State getState() {
+        State from;
+        State to;
+        synchronized (this) {
+            from = state;
+            updateOpenState();
+            to = state;
+        }
+        notifyListener(from, to);
+        return to;
+    }
+
+    /**
+     * Number of calls rejected because the circuit was open.
+     * @return number of calls
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns true if a call is permitted, it must be recorded afterwards.
+     * @return false if the circuit is open
+     */
+    public boolean tryAcquire() {
+        State from;
+        State to;
+        boolean permitted;
+        synchronized (this) {
+            from = state;
+            updateOpenState();
+            to = state;
+            if (state == State.CLOSED) {
+                permitted = true;
+            }
+            else if (state == State.HALF_OPEN && trialsLeft > 0) {
+                trialsLeft--;
+                permitted = true;
+            }
+            else {
+                rejected++;
+                permitted = false;
+            }
+        }
+        notifyListener(from, to);
+        return permitted;
+    }
+
+    /**
+     * Record the outcome of a permitted call.
+     * @param failure True if the call failed.
+     * @param durationNanos duration of the call.
+     */
+    public void record(boolean failure, long durationNanos) {
+        boolean isSlow = slowCallNanos > 0 && durationNanos >= slowCallNanos;
+        State from;
+        State to;
+        synchronized (this) {
+            from = state;
+            if (state == State.HALF_OPEN) {
+                if (failure || isSlow) {
+                    open();
+                }
+                else if (++trialsSucceeded >= halfOpenCalls) {
+                    close();
+                }
+            }
+            else if (state == State.CLOSED) {
+                add(failure, isSlow);
+                if (calls >= minimumCalls &&
+                    (failedCalls >= failureRate * calls || slowCalls >= slowCallRate * calls)) {
+                    open();
+                }
+            }
+            to = state;
+        }
+        notifyListener(from, to);
+    }
+
+    /**
+     * Release a permitted call without outcome, like a cancelled call.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialsLeft++;
+        }
+    }
+
+    /**
+     * Add an outcome to the sliding window.
+     */
+    private void add(boolean failure, boolean isSlow) {
+        if (calls == failed.length) { // replace the oldest
+            if (failed[position]) failedCalls--;
+            if (slow[position]) slowCalls--;
+        }
+        else {
+            calls++;
+        }
+        failed[position] = failure;
+        slow[position] = isSlow;
+        if (failure) failedCalls++;
+        if (isSlow) slowCalls++;
+        position = (position + 1) % failed.length;
+    }
+
+    /**
+     * Switch from open to half open after the open duration.
+     */
+    private void updateOpenState() {
+        if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+            state = State.HALF_OPEN;
+            trialsLeft = halfOpenCalls;
+            trialsSucceeded = 0;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.nanoTime() + openNanos;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        calls = position = failedCalls = slowCalls = 0;
+    }
+
+    private void notifyListener(State from, State to) {
+        OnStateChangeListener listener = this.listener;
+        if (from != to && listener != null) {
+            listener.onStateChange(this, from, to);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive limit of concurrent requests (AIMD).
+ * 
+ * Learns the number of requests in flight the server handles
+ * without queueing, like TCP congestion control: the limit grows
+ * by one per limit of successful requests and is cut by a factor
+ * if a request fails or the smoothed latency of its endpoint
+ * exceeds a multiple of the lowest latency observed for that
+ * endpoint. Requests over the limit wait.
+ * 
+ * The latency baseline is kept per endpoint, a lane shares one
+ * limit between endpoints of very different cost (like a single
+ * item and a large listing), compared to the fastest of them any
+ * listing would look congested.
+ */
+public class ConcurrencyLimiter {
+    /**
+     * Default initial limit.
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 16;
+    /**
+     * Factor the limit is cut by on failure or high latency.
+     */
+    private static final double BACKOFF_RATIO = 0.9;
+    /**
+     * Latency above this multiple of the minimum counts as congestion.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+    /**
+     * Samples after that the minimum latency is measured again.
+     */
+    private static final int MIN_LATENCY_WINDOW = 1000;
+    /**
+     * Weight of a new sample in the smoothed latency.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * Lower bound of the limit.
+     */
+    private final int minLimit;
+    /**
+     * Upper bound of the limit.
+     */
+    private int maxLimit;
+    /**
+     * Current limit, fractional to grow slowly.
+     */
+    private double limit;
+    /**
+     * Number of requests in flight.
+     */
+    private int inFlight = 0;
+    /**
+     * Latency baselines by endpoint, the null key for requests
+     * released without endpoint.
+     */
+    private final Map<Endpoint, Baseline> baselines = new HashMap<Endpoint, Baseline>();
+
+    /**
+     * Latency baseline of an endpoint.
+     */
+    private static class Baseline {
+        /**
+         * Lowest latency in nanoseconds of the current window.
+         */
+        long minLatency = Long.MAX_VALUE;
+        /**
+         * Lowest latency of the window being measured.
+         */
+        long nextMinLatency = Long.MAX_VALUE;
+        /**
+         * Samples recorded in the window being measured.
+         */
+        int samples = 0;
+        /**
+         * Exponentially smoothed latency in nanoseconds, 0 before the first sample.
+         */
+        double smoothedLatency = 0;
+
+        /**
+         * Record the latency of a successful request.
+         * @param latencyNanos
+         */
+        void add(long latencyNanos) {
+            nextMinLatency = Math.min(nextMinLatency, latencyNanos);
+            minLatency = Math.min(minLatency, latencyNanos);
+            if (++samples >= MIN_LATENCY_WINDOW) { // follow a changing baseline
+                minLatency = nextMinLatency;
+                nextMinLatency = Long.MAX_VALUE;
+                samples = 0;
+            }
+            smoothedLatency = smoothedLatency == 0 ? latencyNanos :
+                smoothedLatency + SMOOTHING * (latencyNanos - smoothedLatency);
+        }
+
+        /**
+         * Whether the smoothed latency indicates queueing.
+         * @return true if congested.
+         */
+        boolean isCongested() {
+            return smoothedLatency > minLatency * LATENCY_TOLERANCE;
+        }
+    }
+
+    /**
+     * Construct a limiter.
+     * @param initialLimit
+     * @param minLimit
+     * @param maxLimit
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+    }
+
+    /**
+     * Wait until a request is allowed in flight.
+     * @throws InterruptedException
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Wait until a request is allowed in flight or the timeout elapsed.
+     * @param timeout
+     * @param unit
+     * @return true if allowed, false if the timeout elapsed.
+     * @throws InterruptedException
+     */
+    public synchronized boolean tryAcquire(long timeout, TimeUnit unit)
+      throws InterruptedException {
+        long end = System.nanoTime() + unit.toNanos(timeout);
+        while (inFlight >= (int) limit) {
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Release a request and adapt the limit by its outcome.
+     * 
+     * The latency is compared to a baseline shared by all requests
+     * released without endpoint.
+     * 
+     * @param latencyNanos latency of the request.
+     * @param failure True if the request failed.
+     */
+    public void release(long latencyNanos, boolean failure) {
+        release(null, latencyNanos, failure);
+    }
+
+    /**
+     * Release a request and adapt the limit by its outcome.
+     * @param endpoint the latency baseline is kept for, or null.
+     * @param latencyNanos latency of the request.
+     * @param failure True if the request failed.
+     */
+    public synchronized void release(Endpoint endpoint, long latencyNanos, boolean failure) {
+        boolean saturated = inFlight * 2 >= (int) limit;
+        inFlight--;
+
+        Baseline baseline = baselines.get(endpoint);
+        if (baseline == null) {
+            baseline = new Baseline();
+            baselines.put(endpoint, baseline);
+        }
+        if (!failure) {
+            baseline.add(latencyNanos);
+        }
+
+        if (failure || baseline.isCongested()) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        }
+        else if (saturated) { // only grow if the limit is actually used
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Release a request that was not sent, the limit is not adapted.
+     */
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * The current limit of concurrent requests.
+     * @return limit
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * The upper bound of the limit.
+     * @return maximum limit
+     */
+    public synchronized int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Change the upper bound of the limit, like to a new pool size.
+     * @param maxLimit
+     */
+    public synchronized void setMaxLimit(int maxLimit) {
+        this.maxLimit = Math.max(maxLimit, minLimit);
+        limit = Math.min(limit, this.maxLimit);
+        notifyAll();
+    }
+
+    /**
+     * Number of requests in flight.
+     * @return number of requests
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time a call and all its requests must complete by.
+ * 
+ * A deadline set for the current thread covers every request of
+ * the API calls made by that thread, including retries and the
+ * requests bulk operations run on other threads. Requests still
+ * in flight when it expires are aborted.
+ * 
+ * <pre>
+ * Deadline previous = Deadline.set(Deadline.after(5, TimeUnit.SECONDS));
+ * try {
+ *     api.itemsByIds(ids);
+ * } finally {
+ *     Deadline.set(previous);
+ * }
+ * </pre>
+ */
+public final class Deadline {
+    /**
+     * Deadline of the call the current thread is working on.
+     */
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<Deadline>();
+
+    /**
+     * Expiration in System.nanoTime() units.
+     */
+    private final long expiresAt;
+
+    /**
+     * Construct by the expiration time.
+     * @param expiresAt in System.nanoTime() units.
+     */
+    private Deadline(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Returns a deadline that expires after the timeout from now.
+     * @param timeout
+     * @param unit
+     * @return deadline instance
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * The deadline of the current thread.
+     * @return deadline or null if the thread has none.
+     */
+    public static Deadline current() {
+        return current.get();
+    }
+
+    /**
+     * Set the deadline of the current thread.
+     * @param deadline null to remove the deadline.
+     * @return the previous deadline of the thread, or null.
+     */
+    public static Deadline set(Deadline deadline) {
+        Deadline previous = current.get();
+        if (deadline == null) {
+            current.remove();
+        }
+        else {
+            current.set(deadline);
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the deadline that expires first.
+     * @param deadline or null.
+     * @return this or the other deadline.
+     */
+    public Deadline min(Deadline deadline) {
+        if (deadline == null || expiresAt - deadline.expiresAt <= 0) {
+            return this;
+        }
+        return deadline;
+    }
+
+    /**
+     * Time left until the deadline expires.
+     * @param unit
+     * @return remaining time, zero or negative if expired.
+     */
+    public long remaining(TimeUnit unit) {
+        return unit.convert(expiresAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * True if the deadline has expired.
+     * @return true if expired
+     */
+    public boolean isExpired() {
+        return expiresAt - System.nanoTime() <= 0;
+    }
+}
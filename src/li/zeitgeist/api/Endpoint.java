@@ -0,0 +1,85 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+/**
+ * Families of API endpoints that share resilience state.
+ * 
+ * Requests of the same family are expected to behave alike, a
+ * failing upload should not stop the read requests for example.
+ */
+public enum Endpoint {
+    /**
+     * Listing, querying and searching items and tags.
+     */
+    READ,
+    /**
+     * Creating items by upload or remote url, /new.
+     */
+    CREATE,
+    /**
+     * Updating the tags of an item, /update.
+     */
+    UPDATE,
+    /**
+     * Upvoting an item, /upvote.
+     */
+    UPVOTE,
+    /**
+     * Deleting an item, /delete.
+     */
+    DELETE;
+
+    /**
+     * Returns the resource lane of this endpoint family.
+     * @return lane enum
+     */
+    public Lane getLane() {
+        switch (this) {
+        case READ:
+            return Lane.READ;
+        case CREATE:
+            return Lane.UPLOAD;
+        default:
+            return Lane.MUTATION;
+        }
+    }
+
+    /**
+     * Returns the family of the endpoint requested by query.
+     * @param query URI from url base.
+     * @return endpoint family
+     */
+    public static Endpoint forQuery(String query) {
+        int end = query.indexOf('?');
+        String path = end == -1 ? query : query.substring(0, end);
+        if (path.equals("/new")) {
+            return CREATE;
+        }
+        else if (path.equals("/update")) {
+            return UPDATE;
+        }
+        else if (path.equals("/upvote")) {
+            return UPVOTE;
+        }
+        else if (path.equals("/delete")) {
+            return DELETE;
+        }
+        return READ;
+    }
+}
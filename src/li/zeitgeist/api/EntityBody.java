@@ -0,0 +1,60 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+
+/**
+ * Request body written by an HTTP client entity. (package protected)
+ * 
+ * The form and multipart bodies of the API are built as entities
+ * and sent by any transport through this body.
+ */
+class EntityBody implements RequestBody {
+    /**
+     * Entity the content is written by.
+     */
+    private final HttpEntity entity;
+
+    /**
+     * Construct a body written by the entity.
+     * @param entity
+     */
+    public EntityBody(HttpEntity entity) {
+        this.entity = entity;
+    }
+
+    public String getContentType() {
+        return entity.getContentType() != null ? entity.getContentType().getValue() : null;
+    }
+
+    public long getContentLength() {
+        return entity.getContentLength();
+    }
+
+    public boolean isRepeatable() {
+        return entity.isRepeatable();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        entity.writeTo(out);
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import li.zeitgeist.api.error.ZeitgeistError;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plans how a set of items is fetched with the fewest requests. (package protected)
+ * 
+ * Item IDs are sequential and list pages return windows of items
+ * before an ID, so dense ranges of IDs are cheaper to sweep page
+ * by page than to query item by item. Sparse IDs are queried by
+ * single item requests. The page size is learned from the pages
+ * returned by the server.
+ */
+class FetchPlanner {
+    /**
+     * API instance the requests are made with.
+     */
+    private final ZeitgeistApi api;
+    /**
+     * Number of concurrent single item requests.
+     */
+    private final int concurrency;
+    /**
+     * Estimated number of items per list page.
+     */
+    private int pageSize;
+    /**
+     * True once the page size was learned from a response.
+     */
+    private boolean pageSizeLearned = false;
+    /**
+     * Number of list pages requested.
+     */
+    private int pageRequests = 0;
+
+    /**
+     * Construct a planner.
+     * @param api
+     * @param pageSize initial estimate of the items per page.
+     * @param concurrency of the single item requests.
+     */
+    public FetchPlanner(ZeitgeistApi api, int pageSize, int concurrency) {
+        this.api = api;
+        this.pageSize = pageSize;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Fetch the items by sweeping dense ranges and querying the rest.
+     * @param ids
+     * @return result with outcome per ID and request counts.
+     * @throws ZeitgeistError if interrupted.
+     */
+    public FetchResult fetch(Collection<Integer> ids) throws ZeitgeistError {
+        Integer[] requested = ids.toArray(new Integer[0]);
+        int[] sorted = new int[requested.length];
+        for (int i = 0; i < requested.length; i++) {
+            sorted[i] = requested[i];
+        }
+        Arrays.sort(sorted);
+
+        Set<Integer> wanted = new HashSet<Integer>(ids);
+        Map<Integer, Item> found = new HashMap<Integer, Item>();
+        Map<Integer, ZeitgeistError> failed = new HashMap<Integer, ZeitgeistError>();
+        List<Integer> single = new ArrayList<Integer>();
+
+        // walk runs from the highest ID down, the same direction pages go
+        int end = sorted.length - 1;
+        while (end >= 0) {
+            int start = end;
+            int count = 1;
+            while (start > 0 && sorted[start] - sorted[start - 1] < pageSize) {
+                if (sorted[start - 1] != sorted[start]) {
+                    count++;
+                }
+                start--;
+            }
+            int high = sorted[end];
+            int low = sorted[start];
+            int pages = (high - low) / pageSize + 1;
+
+            if (pages < count) {
+                sweep(high, low, wanted, found);
+            }
+            for (int i = start; i <= end; i++) {
+                if (!found.containsKey(sorted[i]) && (i == start || sorted[i] != sorted[i - 1])) {
+                    single.add(sorted[i]); // sparse or not listed
+                }
+            }
+            end = start - 1;
+        }
+
+        if (!single.isEmpty()) {
+            for (ItemResult result : api.itemsByIds(single, concurrency)) {
+                if (result.isSuccess()) {
+                    found.put(result.getId(), result.getItem());
+                }
+                else {
+                    failed.put(result.getId(), result.getError());
+                }
+            }
+        }
+
+        List<ItemResult> results = new ArrayList<ItemResult>(requested.length);
+        for (Integer id : requested) {
+            Item item = found.get(id);
+            if (item != null) {
+                results.add(new ItemResult(id, item));
+            }
+            else {
+                results.add(new ItemResult(id, failed.get(id)));
+            }
+        }
+
+        return new FetchResult(results, pageRequests, single.size());
+    }
+
+    /**
+     * Requests list pages from high down to low, collects the items.
+     * 
+     * A failed page request stops the sweep, the items not found
+     * are then queried by single requests.
+     * 
+     * @param high ID
+     * @param low ID
+     * @param wanted IDs that are collected.
+     * @param found map the items are put into.
+     */
+    private void sweep(int high, int low, Set<Integer> wanted, Map<Integer, Item> found) {
+        int before = high + 1;
+        while (before > low) {
+            List<Item> page;
+            try {
+                page = api.listBefore(before);
+            } catch (ZeitgeistError e) {
+                return;
+            }
+            pageRequests++;
+            if (page == null || page.isEmpty()) {
+                return;
+            }
+            if (!pageSizeLearned || page.size() > pageSize) {
+                pageSize = page.size();
+                pageSizeLearned = true;
+            }
+            for (Item item : page) {
+                int id = item.getId();
+                if (wanted.contains(id)) {
+                    found.put(id, item);
+                }
+                if (id < before) {
+                    before = id;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.util.List;
+
+/**
+ * Result of a planned bulk fetch of items.
+ * 
+ * Besides the outcome per ID it reports how many requests were
+ * made and how many were saved compared to querying each item.
+ */
+public class FetchResult {
+    /**
+     * Outcome per ID in the order of the requested IDs.
+     */
+    private final List<ItemResult> results;
+    /**
+     * Number of list pages requested to sweep dense ranges.
+     */
+    private final int pageRequests;
+    /**
+     * Number of single item requests.
+     */
+    private final int itemRequests;
+
+    /**
+     * Construct the result of a bulk fetch.
+     * @param results
+     * @param pageRequests
+     * @param itemRequests
+     */
+    public FetchResult(List<ItemResult> results, int pageRequests, int itemRequests) {
+        this.results = results;
+        this.pageRequests = pageRequests;
+        this.itemRequests = itemRequests;
+    }
+
+    /**
+     * Outcome per ID in the order of the requested IDs.
+     * @return list of results
+     */
+    public List<ItemResult> getResults() {
+        return results;
+    }
+
+    /**
+     * Number of list pages requested to sweep dense ranges.
+     * @return number of requests
+     */
+    public int getPageRequests() {
+        return pageRequests;
+    }
+
+    /**
+     * Number of single item requests.
+     * @return number of requests
+     */
+    public int getItemRequests() {
+        return itemRequests;
+    }
+
+    /**
+     * Total number of requests made.
+     * @return number of requests
+     */
+    public int getRequests() {
+        return pageRequests + itemRequests;
+    }
+
+    /**
+     * Requests saved compared to querying every item by ID.
+     * @return number of requests, negative if more were made
+     */
+    public int getRequestsSaved() {
+        return results.size() - getRequests();
+    }
+
+    public String toString() {
+        return "[items: " + results.size() + "; pages: " + pageRequests +
+            "; single: " + itemRequests + "; saved: " + getRequestsSaved() + "]";
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import li.zeitgeist.api.error.ParseError;
+import li.zeitgeist.api.error.ZeitgeistError;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Default json codec, decodes and encodes responses with the gson type adapters.
+ * 
+ * The gson instance is configured once and shared, it is thread safe.
+ * Identical tags of all decoded items share one tag instance.
+ */
+public class GsonCodec implements JsonCodec {
+    /**
+     * Gson instance with the type adapters of the API responses.
+     */
+    private final Gson gson;
+    /**
+     * Gson instance that decodes listed items into an item page.
+     */
+    private final Gson pageGson;
+
+    /**
+     * Construct a codec for responses of the installation at baseUrl.
+     * @param baseUrl items are resolved against.
+     */
+    public GsonCodec(String baseUrl) {
+        TagDictionary dictionary = new TagDictionary();
+        gson = new GsonBuilder()
+            .registerTypeAdapter(Response.class,
+                    new ResponseTypeAdapter(baseUrl, false, dictionary))
+            .create();
+        pageGson = new GsonBuilder()
+            .registerTypeAdapter(Response.class,
+                    new ResponseTypeAdapter(baseUrl, true, dictionary))
+            .create();
+    }
+
+    public Response decode(Reader reader) throws IOException, ZeitgeistError {
+        return decode(gson, reader);
+    }
+
+    /**
+     * Decode a response with the listed items as item page.
+     * 
+     * The items are decoded into the columns of the page without
+     * constructing item objects.
+     * 
+     * @param reader of the response content.
+     * @return decoded response, the page is set instead of the items.
+     * @throws IOException if reading the content failed.
+     * @throws ZeitgeistError if the content is no valid response.
+     */
+    public Response decodePage(Reader reader) throws IOException, ZeitgeistError {
+        return decode(pageGson, reader);
+    }
+
+    /**
+     * Encode a response as json the codec decodes again.
+     * 
+     * Only the fields set in the response are written, an item
+     * page is written as the list of its items.
+     * 
+     * @param response to encode.
+     * @param writer of the json content.
+     * @throws IOException if writing the content failed.
+     */
+    public void encode(Response response, Writer writer) throws IOException {
+        try {
+            gson.toJson(response, Response.class, writer);
+        } catch (JsonIOException e) {
+            throw e.getCause() instanceof IOException
+                ? (IOException) e.getCause() : new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Decode a response with the gson instance.
+     * 
+     * Gson wraps every IOException of the reader, only those of the
+     * connection are rethrown, as well as the EOFException of content
+     * that ends early, the connection may have been closed. Malformed
+     * content (MalformedJsonException) is a parse error, as well as
+     * values that are no valid number, timestamp or dimensions.
+     * 
+     * @param gson
+     * @param reader
+     * @return decoded response.
+     * @throws IOException if the connection failed while reading.
+     * @throws ZeitgeistError if the content is no valid response.
+     */
+    private static Response decode(Gson gson, Reader reader)
+            throws IOException, ZeitgeistError {
+        try {
+            return gson.fromJson(reader, Response.class);
+        } catch (JsonParseException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof EOFException) {
+                throw (IOException) cause; // truncated, may be retried
+            }
+            if (cause instanceof IOException && !(cause instanceof MalformedJsonException)) {
+                throw (IOException) cause; // connection failed while reading
+            }
+            throw new ParseError("JsonParseException: " + e.getMessage());
+        } catch (IllegalArgumentException e) { // invalid number, timestamp or dimensions
+            throw new ParseError(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a second copy of a slow GET request is sent.
+ * 
+ * If the first request was not answered after the hedge delay, the
+ * same request is sent again on another connection and the first
+ * response wins. The delay is either fixed or a percentile of the
+ * recently observed latencies, so only the slowest requests are
+ * hedged.
+ */
+public class HedgePolicy {
+    /**
+     * Default percentile of the latencies used as the delay.
+     */
+    public static final double DEFAULT_PERCENTILE = 0.95;
+    /**
+     * Number of latencies kept to compute the percentile.
+     */
+    private static final int SAMPLES = 256;
+    /**
+     * Latencies recorded before a percentile delay is used.
+     */
+    private static final int MINIMUM_SAMPLES = 20;
+    /**
+     * Latencies recorded before the percentile is computed again.
+     */
+    private static final int RECOMPUTE_AFTER = 16;
+
+    /**
+     * Fixed delay in nanoseconds, -1 to use the percentile.
+     */
+    private final long fixedDelay;
+    /**
+     * Percentile of the latencies used as the delay.
+     */
+    private final double percentile;
+    /**
+     * Recent latencies in nanoseconds, a ring buffer.
+     */
+    private final long[] latencies = new long[SAMPLES];
+    /**
+     * Number of latencies recorded.
+     */
+    private long recorded = 0;
+    /**
+     * The delay computed from the latencies, -1 if not enough samples.
+     */
+    private long percentileDelay = -1;
+    /**
+     * Recorded count at the time the percentile was computed.
+     */
+    private long computedAt = 0;
+    /**
+     * Number of hedge requests sent.
+     */
+    private final AtomicLong hedgesFired = new AtomicLong();
+    /**
+     * Number of hedge requests answered first.
+     */
+    private final AtomicLong hedgesWon = new AtomicLong();
+    /**
+     * Number of hedge requests not sent for lack of permits.
+     */
+    private final AtomicLong hedgesSkipped = new AtomicLong();
+
+    /**
+     * Construct a policy.
+     * @param fixedDelay in nanoseconds or -1 to use the percentile.
+     * @param percentile of the latencies used as the delay.
+     */
+    private HedgePolicy(long fixedDelay, double percentile) {
+        this.fixedDelay = fixedDelay;
+        this.percentile = percentile;
+    }
+
+    /**
+     * Returns a policy that hedges after a fixed delay.
+     * @param millis delay in milliseconds.
+     * @return policy instance
+     */
+    public static HedgePolicy fixedDelay(long millis) {
+        return new HedgePolicy(millis * 1000000L, 0);
+    }
+
+    /**
+     * Returns a policy that hedges after a percentile of the recent latencies.
+     * @param percentile between 0 and 1, for instance 0.95
+     * @return policy instance
+     */
+    public static HedgePolicy percentile(double percentile) {
+        return new HedgePolicy(-1, percentile);
+    }
+
+    /**
+     * Returns the delay after that a request is hedged.
+     * @return delay in nanoseconds, -1 if requests should not be hedged yet.
+     */
+    public synchronized long getDelay() {
+        if (fixedDelay >= 0) {
+            return fixedDelay;
+        }
+        if (recorded < MINIMUM_SAMPLES) {
+            return -1;
+        }
+        if (percentileDelay == -1 || recorded - computedAt >= RECOMPUTE_AFTER) {
+            int count = (int) Math.min(recorded, SAMPLES);
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            percentileDelay = sorted[(int) Math.min(count - 1, Math.floor(percentile * count))];
+            computedAt = recorded;
+        }
+        return percentileDelay;
+    }
+
+    /**
+     * Record the latency of a successful request.
+     * @param nanos
+     */
+    public synchronized void recordLatency(long nanos) {
+        latencies[(int) (recorded % SAMPLES)] = nanos;
+        recorded++;
+    }
+
+    /**
+     * Records that a hedge request was sent.
+     */
+    void onHedgeFired() {
+        hedgesFired.incrementAndGet();
+    }
+
+    /**
+     * Records that a hedge request was answered first.
+     */
+    void onHedgeWon() {
+        hedgesWon.incrementAndGet();
+    }
+
+    /**
+     * Records that a hedge request was not sent for lack of permits.
+     */
+    void onHedgeSkipped() {
+        hedgesSkipped.incrementAndGet();
+    }
+
+    /**
+     * Number of hedge requests sent.
+     * @return number of requests
+     */
+    public long getHedgesFired() {
+        return hedgesFired.get();
+    }
+
+    /**
+     * Number of hedge requests answered before the original request.
+     * @return number of requests
+     */
+    public long getHedgesWon() {
+        return hedgesWon.get();
+    }
+
+    /**
+     * Number of hedge requests not sent because the rate limiter or
+     * the concurrency limiter had no permit left.
+     * @return number of requests
+     */
+    public long getHedgesSkipped() {
+        return hedgesSkipped.get();
+    }
+}
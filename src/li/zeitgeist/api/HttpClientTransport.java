@@ -0,0 +1,377 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.cache.ResourceFactory;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClient;
+import org.apache.http.impl.client.cache.FileResourceFactory;
+import org.apache.http.impl.client.cache.HeapResourceFactory;
+import org.apache.http.impl.client.cache.ManagedHttpCacheStorage;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Transport using the Apache HTTP Client.
+ * 
+ * Every lane has its own thread safe connection pool, connections
+ * are kept alive and reused. Uploads, mutations and reads use
+ * separate pools so long uploads can't starve the reads. Reads
+ * can optionally be answered by a HTTP response cache. Expired
+ * and idle connections are closed by a background thread that is
+ * shared by all transports.
+ * 
+ * The connection pools are held until {@link #shutdown()} is
+ * called, call it once the transport is no longer used.
+ */
+public class HttpClientTransport implements Transport {
+    /**
+     * Default milliseconds between two runs of the idle connection evictor.
+     */
+    public static final long DEFAULT_EVICT_INTERVAL = 5000;
+    /**
+     * Default milliseconds a pooled connection may be idle.
+     */
+    public static final long DEFAULT_MAX_IDLE_TIME = 30000;
+
+    /**
+     * Isolated connection pool and HTTP client per lane.
+     */
+    private final Map<Lane, Bulkhead> bulkheads = new EnumMap<Lane, Bulkhead>(Lane.class);
+    /**
+     * Client read requests are executed by, either the client of
+     * the read lane or the caching client wrapped around it.
+     */
+    private volatile HttpClient readClient;
+    /**
+     * Caching client if the response cache is enabled.
+     */
+    private volatile CachingHttpClient cachingClient = null;
+    /**
+     * Storage of the response cache, null if disabled.
+     */
+    private volatile ManagedHttpCacheStorage cacheStorage = null;
+    /**
+     * Registration of all lanes with the idle connection evictor.
+     */
+    private final IdleConnectionEvictor.Registration evictor;
+
+    /**
+     * Construct with the default pool sizes and timeouts.
+     */
+    public HttpClientTransport() {
+        bulkheads.put(Lane.READ, new Bulkhead(Lane.READ,
+                ZeitgeistApi.DEFAULT_MAX_READ_CONNECTIONS));
+        bulkheads.put(Lane.MUTATION, new Bulkhead(Lane.MUTATION,
+                ZeitgeistApi.DEFAULT_MAX_MUTATION_CONNECTIONS));
+        bulkheads.put(Lane.UPLOAD, new Bulkhead(Lane.UPLOAD,
+                ZeitgeistApi.DEFAULT_MAX_UPLOAD_CONNECTIONS));
+        readClient = bulkheads.get(Lane.READ).getClient();
+        setConnectTimeout(ZeitgeistApi.DEFAULT_CONNECT_TIMEOUT);
+        setSocketTimeout(ZeitgeistApi.DEFAULT_SOCKET_TIMEOUT);
+        setPoolTimeout(ZeitgeistApi.DEFAULT_POOL_TIMEOUT);
+
+        List<PooledClientConnManager> connectionManagers = new ArrayList<PooledClientConnManager>();
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            connectionManagers.add(bulkhead.getConnectionManager());
+        }
+        evictor = IdleConnectionEvictor.register(connectionManagers, DEFAULT_EVICT_INTERVAL,
+                DEFAULT_MAX_IDLE_TIME);
+    }
+
+    public TransportResponse execute(TransportRequest request, Lane lane) throws IOException {
+        ManagedHttpCacheStorage cacheStorage = this.cacheStorage;
+        if (cacheStorage != null) {
+            cacheStorage.cleanResources(); // frees evicted responses
+        }
+        final HttpRequestBase httpRequest = createRequest(request);
+        // aborting the request closes its pooled connection
+        request.setAbortHandler(new TransportRequest.AbortHandler() {
+            public void onAbort() {
+                httpRequest.abort();
+            }
+        });
+
+        HttpClient client = lane == Lane.READ ? readClient : bulkheads.get(lane).getClient();
+        HttpContext context = new BasicHttpContext();
+        HttpResponse response;
+        try {
+            response = client.execute(httpRequest, context);
+        } finally {
+            if (Boolean.TRUE.equals(context.getAttribute(ExecutionContext.HTTP_REQ_SENT))) {
+                request.markSent();
+            }
+        }
+
+        int statusCode = response.getStatusLine().getStatusCode();
+        String reasonPhrase = response.getStatusLine().getReasonPhrase();
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return new TransportResponse(statusCode, reasonPhrase, null, -1, null);
+        }
+        Header contentType = entity.getContentType();
+        InputStream content = entity.getContent(); // closing it releases the connection
+        return new TransportResponse(statusCode, reasonPhrase,
+                contentType != null ? contentType.getValue() : null,
+                entity.getContentLength(), content);
+    }
+
+    /**
+     * Creates the HTTP client request of a transport request.
+     * @param request
+     * @return request with headers and entity.
+     * @throws ClientProtocolException if the method is not supported.
+     */
+    private static HttpRequestBase createRequest(TransportRequest request)
+      throws ClientProtocolException {
+        HttpRequestBase httpRequest;
+        String method = request.getMethod();
+        if (method.equals("GET")) {
+            httpRequest = new HttpGet(request.getUri());
+        }
+        else if (method.equals("HEAD")) {
+            httpRequest = new HttpHead(request.getUri());
+        }
+        else if (method.equals("POST")) {
+            HttpPost post = new HttpPost(request.getUri());
+            if (request.getBody() != null) {
+                post.setEntity(new BodyEntity(request.getBody()));
+            }
+            httpRequest = post;
+        }
+        else {
+            throw new ClientProtocolException("Unsupported method: " + method);
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            httpRequest.setHeader(header.getKey(), header.getValue());
+        }
+        return httpRequest;
+    }
+
+    /**
+     * Entity writing the body of a transport request.
+     */
+    private static class BodyEntity extends AbstractHttpEntity {
+        private final RequestBody body;
+
+        public BodyEntity(RequestBody body) {
+            this.body = body;
+            setContentType(body.getContentType());
+        }
+
+        public boolean isRepeatable() {
+            return body.isRepeatable();
+        }
+
+        public long getContentLength() {
+            return body.getContentLength();
+        }
+
+        public InputStream getContent() {
+            throw new UnsupportedOperationException("The body is only written");
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            body.writeTo(out);
+        }
+
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * Set the timeout to establish a connection.
+     * @param timeout in milliseconds, 0 for none.
+     */
+    public void setConnectTimeout(int timeout) {
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            HttpConnectionParams.setConnectionTimeout(bulkhead.getParams(), timeout);
+        }
+    }
+
+    /**
+     * Set the timeout waiting for data of a response (SO_TIMEOUT).
+     * @param timeout in milliseconds, 0 for none.
+     */
+    public void setSocketTimeout(int timeout) {
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            HttpConnectionParams.setSoTimeout(bulkhead.getParams(), timeout);
+        }
+    }
+
+    /**
+     * Set the timeout waiting for a connection of the pool.
+     * @param timeout in milliseconds, 0 for none.
+     */
+    public void setPoolTimeout(long timeout) {
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            bulkhead.setConnectionManagerTimeout(timeout);
+        }
+    }
+
+    /**
+     * Set the time a pooled connection may be idle before it is closed.
+     * @param maxIdleTime in milliseconds.
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        evictor.setMaxIdleTime(maxIdleTime);
+    }
+
+    /**
+     * Open connections of a lane to the server ahead of the first requests.
+     * @param lane
+     * @param uri of the server.
+     * @param connections number of connections to open.
+     * @return number of connections opened.
+     */
+    public int warmUp(Lane lane, URI uri, int connections) {
+        return bulkheads.get(lane).warmUp(uri, connections);
+    }
+
+    /**
+     * Enable the HTTP response cache, responses are stored in memory.
+     * @param maxEntries maximum number of cached responses.
+     */
+    public void enableCache(int maxEntries) {
+        enableCache(new HeapResourceFactory(), maxEntries);
+    }
+
+    /**
+     * Enable the HTTP response cache, response bodies are stored on disk.
+     * @param directory to store the response bodies in.
+     * @param maxEntries maximum number of cached responses.
+     */
+    public void enableCache(File directory, int maxEntries) {
+        enableCache(new FileResourceFactory(directory), maxEntries);
+    }
+
+    /**
+     * Enable the HTTP response cache with bodies stored by the factory.
+     * @param resourceFactory
+     * @param maxEntries
+     */
+    private synchronized void enableCache(ResourceFactory resourceFactory, int maxEntries) {
+        disableCache();
+        CacheConfig config = new CacheConfig();
+        config.setMaxCacheEntries(maxEntries);
+        config.setMaxObjectSizeBytes(ZeitgeistApi.DEFAULT_MAX_CACHED_RESPONSE_SIZE);
+        config.setSharedCache(false); // responses may depend on X-API-Auth
+        cacheStorage = new ManagedHttpCacheStorage(config);
+        // only reads are cached, mutations and uploads bypass the cache
+        cachingClient = new CachingHttpClient(bulkheads.get(Lane.READ).getClient(),
+                resourceFactory, cacheStorage, config);
+        readClient = cachingClient;
+    }
+
+    /**
+     * Disable the HTTP response cache and free the cached responses.
+     */
+    public synchronized void disableCache() {
+        if (cacheStorage == null) return;
+        readClient = bulkheads.get(Lane.READ).getClient();
+        cachingClient = null;
+        cacheStorage.shutdown();
+        cacheStorage = null;
+    }
+
+    /**
+     * Number of requests answered by the response cache.
+     * @return number of hits, 0 if the cache is disabled
+     */
+    public long getCacheHits() {
+        CachingHttpClient cachingClient = this.cachingClient;
+        return cachingClient != null ? cachingClient.getCacheHits() : 0;
+    }
+
+    /**
+     * Number of requests the response cache could not answer.
+     * @return number of misses, 0 if the cache is disabled
+     */
+    public long getCacheMisses() {
+        CachingHttpClient cachingClient = this.cachingClient;
+        return cachingClient != null ? cachingClient.getCacheMisses() : 0;
+    }
+
+    /**
+     * Number of cached responses updated after revalidation.
+     * @return number of updates, 0 if the cache is disabled
+     */
+    public long getCacheUpdates() {
+        CachingHttpClient cachingClient = this.cachingClient;
+        return cachingClient != null ? cachingClient.getCacheUpdates() : 0;
+    }
+
+    /**
+     * Set the maximum number of pooled connections of a lane.
+     * @param lane
+     * @param max
+     */
+    public void setMaxConnections(Lane lane, int max) {
+        bulkheads.get(lane).setMaxConnections(max);
+    }
+
+    /**
+     * The maximum number of pooled connections of a lane.
+     * @param lane
+     * @return max connections
+     */
+    public int getMaxConnections(Lane lane) {
+        return bulkheads.get(lane).getMaxConnections();
+    }
+
+    /**
+     * Returns the number of leased, available and pending connections
+     * of a lane.
+     * @param lane
+     * @return pool stats snapshot
+     */
+    public PoolStats getPoolStats(Lane lane) {
+        return bulkheads.get(lane).getStats();
+    }
+
+    public void shutdown() {
+        evictor.cancel();
+        disableCache();
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            bulkhead.shutdown();
+        }
+    }
+}
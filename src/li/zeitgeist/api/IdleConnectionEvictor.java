@@ -0,0 +1,196 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+
+/**
+ * Closes expired and idle pooled connections in the background. (package protected)
+ * 
+ * Pooled connections the server closed in the meantime fail on
+ * their next use, the evictor closes connections after the keep
+ * alive duration expired or if they were idle too long. Based on
+ * the ClientEvictExpiredConnections example of httpclient.
+ * 
+ * One daemon thread is shared by all transports. It is started
+ * with the first registration and ends once no registration is
+ * left. The connection managers are only weakly referenced, an
+ * API instance that is dropped without shutdown is not kept alive
+ * by the evictor.
+ */
+class IdleConnectionEvictor implements Runnable {
+    /**
+     * Connection managers of a transport registered with the evictor.
+     */
+    static class Registration {
+        /**
+         * Weakly referenced connection managers.
+         */
+        private final List<WeakReference<ClientConnectionManager>> connectionManagers;
+        /**
+         * Milliseconds a connection may be idle before it is closed.
+         */
+        private volatile long maxIdleTime;
+        /**
+         * True once the registration is cancelled.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Construct a registration.
+         * @param connectionManagers
+         * @param maxIdleTime
+         */
+        private Registration(List<? extends ClientConnectionManager> connectionManagers,
+                long maxIdleTime) {
+            this.connectionManagers = new ArrayList<WeakReference<ClientConnectionManager>>();
+            for (ClientConnectionManager connectionManager : connectionManagers) {
+                this.connectionManagers.add(
+                        new WeakReference<ClientConnectionManager>(connectionManager));
+            }
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        /**
+         * Set the time a connection may be idle before it is closed.
+         * @param maxIdleTime in milliseconds.
+         */
+        public void setMaxIdleTime(long maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+        }
+
+        /**
+         * Stop evicting the connections of this registration.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Close the expired and idle connections.
+         * @return false if the registration is cancelled or all
+         *         connection managers are garbage collected.
+         */
+        private boolean evict() {
+            if (cancelled) {
+                return false;
+            }
+            boolean alive = false;
+            for (WeakReference<ClientConnectionManager> reference : connectionManagers) {
+                ClientConnectionManager connectionManager = reference.get();
+                if (connectionManager != null) {
+                    alive = true;
+                    // close expired connections
+                    connectionManager.closeExpiredConnections();
+                    // close connections that have been idle too long
+                    connectionManager.closeIdleConnections(maxIdleTime, TimeUnit.MILLISECONDS);
+                }
+            }
+            return alive;
+        }
+    }
+
+    /**
+     * Registrations of the shared evictor, guarded by the class.
+     */
+    private static final List<Registration> registrations = new ArrayList<Registration>();
+    /**
+     * The running evictor thread, null if none is running.
+     */
+    private static Thread thread = null;
+
+    /**
+     * Milliseconds between two runs.
+     */
+    private final long interval;
+
+    /**
+     * Construct the evictor.
+     * @param interval milliseconds between two runs.
+     */
+    private IdleConnectionEvictor(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Register connection managers with the shared evictor.
+     * 
+     * Starts the evictor thread if it is not running.
+     * 
+     * @param connectionManagers
+     * @param interval milliseconds between two runs, if the thread is started.
+     * @param maxIdleTime milliseconds a connection may be idle.
+     * @return registration to change the idle time or to cancel.
+     */
+    public static synchronized Registration register(
+            List<? extends ClientConnectionManager> connectionManagers, long interval,
+            long maxIdleTime) {
+        Registration registration = new Registration(connectionManagers, maxIdleTime);
+        registrations.add(registration);
+        if (thread == null) {
+            thread = new Thread(new IdleConnectionEvictor(interval), "zeitgeist-evictor");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return registration;
+    }
+
+    /**
+     * Returns true if the evictor thread is running.
+     * @return true if running
+     */
+    static synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                Thread.sleep(interval);
+                List<Registration> current;
+                synchronized (IdleConnectionEvictor.class) {
+                    current = new ArrayList<Registration>(registrations);
+                }
+                List<Registration> ended = new ArrayList<Registration>();
+                for (Registration registration : current) {
+                    if (!registration.evict()) {
+                        ended.add(registration);
+                    }
+                }
+                synchronized (IdleConnectionEvictor.class) {
+                    registrations.removeAll(ended);
+                    if (registrations.isEmpty()) {
+                        thread = null; // a new registration starts a new thread
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            synchronized (IdleConnectionEvictor.class) {
+                if (thread == Thread.currentThread()) {
+                    thread = null;
+                }
+            }
+        }
+    }
+}
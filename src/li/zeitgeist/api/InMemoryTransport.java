@@ -0,0 +1,113 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport answering requests with canned responses from memory.
+ * 
+ * Useful to benchmark the decoding and the client side overhead
+ * of the API apart from the network, or to test without a server.
+ * Responses are looked up by the path and query of the request,
+ * unknown paths are answered with a 404 error.
+ */
+public class InMemoryTransport implements Transport {
+    /**
+     * Canned response by path and query.
+     */
+    private final Map<String, Canned> responses = new ConcurrentHashMap<String, Canned>();
+    /**
+     * Number of requests answered.
+     */
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Answer requests of the path with the json body.
+     * @param path path and query of the request URL, like "/?before=10".
+     * @param statusCode
+     * @param json body of the response.
+     */
+    public void setResponse(String path, int statusCode, String json) {
+        try {
+            responses.put(path, new Canned(statusCode, json.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stop to answer requests of the path.
+     * @param path
+     */
+    public void removeResponse(String path) {
+        responses.remove(path);
+    }
+
+    /**
+     * Number of requests answered by this transport.
+     * @return number of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public TransportResponse execute(TransportRequest request, Lane lane) throws IOException {
+        if (request.isAborted()) {
+            throw new IOException("Request aborted");
+        }
+        request.markSent();
+        requests.incrementAndGet();
+
+        URI uri = request.getUri();
+        String path = uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        Canned canned = responses.get(path);
+        if (canned == null) {
+            canned = new Canned(404,
+                    "{\"type\":\"RouteNotFound\",\"message\":\"Not found\"}".getBytes("UTF-8"));
+        }
+
+        return new TransportResponse(canned.statusCode, null, "application/json; charset=utf-8",
+                canned.body.length, new ByteArrayInputStream(canned.body));
+    }
+
+    public void shutdown() {
+    }
+
+    /**
+     * Status code and body of a canned response.
+     */
+    private static class Canned {
+        private final int statusCode;
+        private final byte[] body;
+
+        public Canned(int statusCode, byte[] body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+}
@@ -19,24 +19,53 @@ package li.zeitgeist.api;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Vector;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 
 /**
  * Zeitgeist Media Item.
  * 
  * Information about an image, audio or video item, contains
  * the thumbnail/location, tags and more.
+ * 
+ * Items are immutable and compact: tags and upvoters are stored
+ * in plain arrays, the image locations and dimensions as fields.
+ * The Image and Dimensions objects are created on demand.
+ * 
+ * The creation time is stored as milliseconds and offset, the
+ * DateTime is constructed on first access.
  */
 public class Item implements Serializable {
 
     /**
      * Object version ID.
      */
-    private static final long serialVersionUID = -3985059947588199110L;
+    private static final long serialVersionUID = 3127789043217650431L;
+
+    /**
+     * Shared by items without tags.
+     */
+    private static final Tag[] NO_TAGS = new Tag[0];
+
+    /**
+     * Shared by items without upvotes.
+     */
+    private static final int[] NO_USERS = new int[0];
+
+    /**
+     * Creation time of items without timestamp.
+     */
+    public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    /**
+     * Packed dimensions of items without dimensions.
+     */
+    private static final long NO_DIMENSIONS = pack(-1, -1);
 
     /**
      * Supported media types, audio and video items are represented
@@ -49,31 +78,42 @@ public class Item implements Serializable {
     /**
      * Location to the image or the video thumbnail.
      */
-    public class Image implements Serializable {
+    public static class Image implements Serializable {
         /**
          * Object version ID.
          */
-        private static final long serialVersionUID = -8541699202813580389L;
+        private static final long serialVersionUID = 2740321765212468418L;
         
         /**
          * Full size image location. Root is the URL base.
          */
-        private String image;
+        private final String image;
         /**
          * Thumbnail, currently this is a 200x200 large gif/jpg/png image.
          */
-        private String thumbnail;
+        private final String thumbnail;
+        /**
+         * The base URL locations are resolved against.
+         */
+        private final String baseUrl;
         /**
          * Constructs a image object with locations to thumbnail/full-sized.
          * @param imageObject json object with primitives
+         * @param baseUrl to return absolute URLs
          */
-        public Image(Map<String, ?> imageObject) {
-            if (imageObject.containsKey("image")) {
-                image = (String)imageObject.get("image");
-            }
-            if (imageObject.containsKey("thumbnail")) {
-                thumbnail = (String)imageObject.get("thumbnail");
-            }
+        public Image(Map<String, ?> imageObject, String baseUrl) {
+            this((String)imageObject.get("image"), (String)imageObject.get("thumbnail"), baseUrl);
+        }
+        /**
+         * Constructs a image object with locations to thumbnail/full-sized.
+         * @param image
+         * @param thumbnail
+         * @param baseUrl to return absolute URLs
+         */
+        public Image(String image, String thumbnail, String baseUrl) {
+            this.image = image;
+            this.thumbnail = thumbnail;
+            this.baseUrl = baseUrl;
         }
         /**
          * The full-sized image.
@@ -122,14 +162,14 @@ public class Item implements Serializable {
     /**
      * Store the dimensions of an image item.
      */
-    public class Dimensions implements Serializable {
+    public static class Dimensions implements Serializable {
         /**
          * Object version ID.
          */
-        private static final long serialVersionUID = 4349734353706680210L;
+        private static final long serialVersionUID = -1930378468231617458L;
         
-        private int width;
-        private int height;
+        private final int width;
+        private final int height;
         
         /**
          * Constructs the dimensions object by a formatted string.
@@ -143,6 +183,15 @@ public class Item implements Serializable {
             width = Integer.parseInt(s[0]);
             height = Integer.parseInt(s[1]);
         }
+        /**
+         * Constructs the dimensions object by width and height.
+         * @param width
+         * @param height
+         */
+        public Dimensions(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
         public String toString() {
             return String.valueOf(width) + "x" + String.valueOf(height);
         }
@@ -163,17 +212,22 @@ public class Item implements Serializable {
     /**
      * Unique ID of this item, numerical, sequential.
      */
-    private int id;
+    private final int id;
 
     /**
      * Item type, image, audio, video.
      */
-    private Type type;
+    private final Type type;
 
     /**
-     * Locations to full-sized and thumbnail image.
+     * Location of the full-sized image, root is the URL base.
      */
-    private Image image;
+    private final String image;
+
+    /**
+     * Location of the thumbnail image, root is the URL base.
+     */
+    private final String thumbnail;
 
     /**
      * Optional source for this item, can be a URL or filename.
@@ -181,67 +235,78 @@ public class Item implements Serializable {
      * May contain the URL to a video/audio, the URL the image was
      * remotely downloaded from or the filename of the upload. 
      */
-    private String source;
+    private final String source;
 
     /**
      * Parsed item title, for instance the YouTube video title.
      */
-    private String title;
+    private final String title;
 
     /**
-     * Timestamp when this item was created.
+     * Timestamp when this item was created, milliseconds since the epoch.
+     */
+    private final long createdMillis;
+
+    /**
+     * Offset from UTC the timestamp was received with, in milliseconds.
+     */
+    private final int createdOffset;
+
+    /**
+     * Timestamp when this item was created, null until first accessed.
      */
-    private DateTime created;
+    private volatile DateTime created;
 
     /**
      * Flag for "Not Safe For Work" (inappropriate) items.
      */
-    private boolean nsfw;
+    private final boolean nsfw;
 
     /**
      * Size of the full-sized image in bytes.
      */
-    private int size;
+    private final int size;
 
     /**
      * Detected content mimetype.
      */
-    private String mimetype;
+    private final String mimetype;
 
     /**
      * Currently an hexdigest MD5.
      */
-    private String checksum;
+    private final String checksum;
     
     /**
-     * The width and height of the full-sized image.
+     * Width and height of the full-sized image packed into the high
+     * and low word, -1 if unknown.
      */
-    private Dimensions dimensions;
+    private final long dimensions;
 
     /**
      * Number of +1 votes.
      */
-    private int upvotes;
+    private final int upvotes;
 
     /**
      * ID of the user that created the item.
      */
-    private int userId = -1;
+    private final int userId;
 
     /**
-     * List of tags associated with this item.
+     * Tags associated with this item.
      */
-    private List<Tag> tags;
+    private final Tag[] tags;
     
     /**
-     * List of User Ids that upvoted this item. 
+     * User Ids that upvoted this item. 
      */
-    private List<Integer> usersUpvoted;
+    private final int[] usersUpvoted;
     
     /**
      * The baseUrl set by the api instance that instantiated this item.
      */
-    private String baseUrl;
+    private final String baseUrl;
 
     /**
      * Construct item object by json primitive map.
@@ -261,54 +326,142 @@ public class Item implements Serializable {
         else if (typeString.equals("video")) {
             type = Type.VIDEO;
         }
+        else {
+            type = null;
+        }
 
-        if (itemObject.containsKey("image") && itemObject.get("image") != null)
-            image = new Image((Map<String, ?>)itemObject.get("image"));
-
-        if (itemObject.containsKey("source") && itemObject.get("source") != null)
-            source = (String)itemObject.get("source");
-
-        if (itemObject.containsKey("title") && itemObject.get("title") != null)
-            title = (String)itemObject.get("title");
-
-        if (itemObject.containsKey("created_at") && itemObject.get("created_at") != null)
-            created = DateTime.parse((String)itemObject.get("created_at"));
-
-        if (itemObject.containsKey("nsfw") && itemObject.get("nsfw") != null)
-            nsfw = (Boolean)itemObject.get("nsfw");
+        Map<String, ?> imageObject = (Map<String, ?>)itemObject.get("image");
+        image = imageObject != null ? (String)imageObject.get("image") : null;
+        thumbnail = imageObject != null ? (String)imageObject.get("thumbnail") : null;
 
-        if (itemObject.containsKey("size") && itemObject.get("size") != null)
-            size = ((Double)itemObject.get("size")).intValue();
+        source = (String)itemObject.get("source");
+        title = (String)itemObject.get("title");
 
-        if (itemObject.containsKey("mimetype") && itemObject.get("mimetype") != null)
-            mimetype = (String)itemObject.get("mimetype");
+        String createdString = (String)itemObject.get("created_at");
+        if (createdString != null) {
+            Timestamps.Parsed parsed = new Timestamps.Parsed();
+            Timestamps.parse(createdString, parsed);
+            createdMillis = parsed.millis;
+            createdOffset = parsed.offset;
+        }
+        else {
+            createdMillis = UNKNOWN_TIME;
+            createdOffset = 0;
+        }
 
-        if (itemObject.containsKey("checksum") && itemObject.get("checksum") != null)
-            checksum = (String)itemObject.get("checksum");
+        Boolean nsfwObject = (Boolean)itemObject.get("nsfw");
+        nsfw = nsfwObject != null && nsfwObject.booleanValue();
 
-        if (itemObject.containsKey("dimensions") && itemObject.get("dimensions") != null)
-            dimensions = new Dimensions((String)itemObject.get("dimensions"));
+        size = intValue(itemObject.get("size"), 0);
+        mimetype = (String)itemObject.get("mimetype");
+        checksum = (String)itemObject.get("checksum");
 
-        if (itemObject.containsKey("upvote_count") && itemObject.get("upvote_count") != null)
-            upvotes = ((Double)itemObject.get("upvote_count")).intValue();
+        dimensions = parseDimensions((String)itemObject.get("dimensions"));
 
-        if (itemObject.get("dm_user_id") != null && itemObject.get("dm_user_id") != null) {
-            userId = ((Double)itemObject.get("dm_user_id")).intValue();
-        }
+        upvotes = intValue(itemObject.get("upvote_count"), 0);
+        userId = intValue(itemObject.get("dm_user_id"), -1);
 
-        tags = new Vector<Tag>();
+        List<Tag> tagList = new ArrayList<Tag>();
         ArrayList<Map<String, ?>> tagsObject = (ArrayList<Map<String, ?>>)itemObject.get("tags");
         for (Map<String, ?> tagObject : tagsObject) {
             if (tagObject == null) break;// why does this happen?
-            addTag(new Tag(tagObject));
+            tagList.add(new Tag(tagObject));
         }
+        tags = tagList.isEmpty() ? NO_TAGS : tagList.toArray(new Tag[tagList.size()]);
         
-        usersUpvoted = new Vector<Integer>();
         ArrayList<Double> usersUpvotedObject = (ArrayList<Double>)itemObject.get("users_upvoted");
+        int count = 0;
+        int[] users = new int[usersUpvotedObject.size()];
         for (Double userUpvoted : usersUpvotedObject) {
             if (userUpvoted == null) break;// should never happen
-            usersUpvoted.add(userUpvoted.intValue());
+            users[count++] = userUpvoted.intValue();
         }
+        usersUpvoted = count == 0 ? NO_USERS : Arrays.copyOf(users, count);
+    }
+
+    /**
+     * Construct item object by decoded json fields. (package protected)
+     * 
+     * Used by the type adapter that decodes items from the json stream,
+     * the arrays are owned by the item afterwards.
+     */
+    Item(String baseUrl, int id, Type type, String image, String thumbnail,
+            String source, String title, long createdMillis, int createdOffset,
+            boolean nsfw, int size, String mimetype, String checksum, int width, int height,
+            int upvotes, int userId, Tag[] tags, int[] usersUpvoted) {
+        this.baseUrl = baseUrl;
+        this.id = id;
+        this.type = type;
+        this.image = image;
+        this.thumbnail = thumbnail;
+        this.source = source;
+        this.title = title;
+        this.createdMillis = createdMillis;
+        this.createdOffset = createdOffset;
+        this.nsfw = nsfw;
+        this.size = size;
+        this.mimetype = mimetype;
+        this.checksum = checksum;
+        this.dimensions = pack(width, height);
+        this.upvotes = upvotes;
+        this.userId = userId;
+        this.tags = tags.length == 0 ? NO_TAGS : tags;
+        this.usersUpvoted = usersUpvoted.length == 0 ? NO_USERS : usersUpvoted;
+    }
+
+    /**
+     * Packs width and height into one value.
+     * @param width
+     * @param height
+     * @return width in the high and height in the low word
+     */
+    private static long pack(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+
+    /**
+     * Parses a dimensions string of the format [width]x[height].
+     * @param dimensions or null
+     * @return packed width and height, NO_DIMENSIONS if null
+     */
+    static long parseDimensions(String dimensions) {
+        if (dimensions == null) {
+            return NO_DIMENSIONS;
+        }
+        int x = dimensions.indexOf('x');
+        if (x < 0) {
+            throw new NumberFormatException("Invalid dimensions: " + dimensions);
+        }
+        return pack(Integer.parseInt(dimensions.substring(0, x)),
+                Integer.parseInt(dimensions.substring(x + 1)));
+    }
+
+    /**
+     * Width of packed dimensions.
+     * @param dimensions
+     * @return width, -1 if unknown
+     */
+    static int width(long dimensions) {
+        return (int) (dimensions >> 32);
+    }
+
+    /**
+     * Height of packed dimensions.
+     * @param dimensions
+     * @return height, -1 if unknown
+     */
+    static int height(long dimensions) {
+        return (int) dimensions;
+    }
+
+    /**
+     * Returns the int value of a json number primitive.
+     * @param number
+     * @param defaultValue if null
+     * @return int value
+     */
+    private static int intValue(Object number, int defaultValue) {
+        return number != null ? ((Double)number).intValue() : defaultValue;
     }
 
     /**
@@ -332,10 +485,11 @@ public class Item implements Serializable {
 
     /**
      * Image object with location to full-sized and thumbnail image.
-     * @return image object
+     * @return image object, null if the item has no image.
      */
     public Image getImage() {
-        return this.image;
+        if (image == null && thumbnail == null) return null;
+        return new Image(image, thumbnail, baseUrl);
     }
 
     /**
@@ -362,7 +516,29 @@ public class Item implements Serializable {
      * @return string
      */
     public DateTime getCreated() {
-        return this.created;
+        DateTime created = this.created;
+        if (created == null && createdMillis != UNKNOWN_TIME) {
+            // immutable, constructing it concurrently is harmless
+            created = new DateTime(createdMillis, DateTimeZone.forOffsetMillis(createdOffset));
+            this.created = created;
+        }
+        return created;
+    }
+
+    /**
+     * Timestamp when this item was created.
+     * @return milliseconds since the epoch, UNKNOWN_TIME if unknown.
+     */
+    public long getCreatedMillis() {
+        return this.createdMillis;
+    }
+
+    /**
+     * Offset from UTC the creation time was received with.
+     * @return offset in milliseconds
+     */
+    int getCreatedOffset() {
+        return this.createdOffset;
     }
 
     /**
@@ -399,10 +575,27 @@ public class Item implements Serializable {
 
     /**
      * The width and height of the full-sized image.
-     * @return dimensions object
+     * @return dimensions object, null if unknown.
      */
     public Dimensions getDimensions() {
-        return this.dimensions;
+        if (width(dimensions) < 0) return null;
+        return new Dimensions(width(dimensions), height(dimensions));
+    }
+
+    /**
+     * The width of the full-sized image.
+     * @return width, -1 if unknown
+     */
+    public int getWidth() {
+        return width(dimensions);
+    }
+
+    /**
+     * The height of the full-sized image.
+     * @return height, -1 if unknown
+     */
+    public int getHeight() {
+        return height(dimensions);
     }
 
     /**
@@ -422,19 +615,28 @@ public class Item implements Serializable {
     }
 
     /**
-     * Add tag object to the list.
-     * @param tag
+     * List of tags associated with this item.
+     * @return unmodifiable list of tag objects
      */
-    private void addTag(Tag tag) {
-        tags.add(tag);
+    public List<Tag> getTags() {
+        return Collections.unmodifiableList(Arrays.asList(tags));
     }
 
     /**
-     * List of tags associated with this item.
-     * @return list of tag objects
+     * Number of tags associated with this item.
+     * @return tag count
      */
-    public List<Tag> getTags() {
-        return tags;
+    public int getTagCount() {
+        return tags.length;
+    }
+
+    /**
+     * Tag at the index.
+     * @param index
+     * @return tag object
+     */
+    public Tag getTag(int index) {
+        return tags[index];
     }
     
     /**
@@ -442,12 +644,66 @@ public class Item implements Serializable {
      * @return list of integer
      */
     public List<Integer> getUsersUpvoted() {
-        return usersUpvoted;
+        List<Integer> list = new ArrayList<Integer>(usersUpvoted.length);
+        for (int userUpvoted : usersUpvoted) {
+            list.add(userUpvoted);
+        }
+        return list;
+    }
+
+    /**
+     * Return the user ids that upvoted this item.
+     * @return copy of the array of ids
+     */
+    public int[] getUsersUpvotedIds() {
+        return usersUpvoted.clone();
+    }
+
+    /**
+     * Returns true if the user upvoted this item.
+     * @param userId
+     * @return true if upvoted
+     */
+    public boolean isUpvotedBy(int userId) {
+        for (int userUpvoted : usersUpvoted) {
+            if (userUpvoted == userId) {
+                return true;
+            }
+        }
+        return false;
     }
     
+    /**
+     * Returns true if the tag specified by ID could be found.
+     * 
+     * @param id of the tag
+     * @return true if found
+     */
+    public boolean hasTag(int id) {
+        for (Tag tag : tags) {
+            if (tag.getId() == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the tag could be found, compared by ID.
+     * 
+     * @param tag
+     * @return true if found
+     */
+    public boolean hasTag(Tag tag) {
+        return hasTag(tag.getId());
+    }
+
     /**
      * Returns true if the tag specified by name could be found.
      * 
+     * Compares the names, prefer {@link #hasTag(int)} if the
+     * ID of the tag is known.
+     * 
      * @param name of the tag
      * @return true if found
      */
@@ -465,12 +721,9 @@ public class Item implements Serializable {
      * @return array of string
      */
     public String[] getTagNames() {
-        if (tags == null) return null;
-        String[] tagNames = new String[tags.size()];
-        Tag tag = null;
+        String[] tagNames = new String[tags.length];
         for (int i = 0; i < tagNames.length; i++) {
-            tag = tags.get(i);
-            tagNames[i] = tag.getName();
+            tagNames[i] = tags[i].getName();
         }
         return tagNames;
     }
@@ -0,0 +1,406 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Page of listed items stored column by column.
+ * 
+ * The fields of the items are kept in parallel arrays decoded
+ * directly from the json response, the item at index i is
+ * described by the i-th element of every column. Scans over
+ * IDs, upvotes, sizes or timestamps read the primitive columns
+ * without touching any item object, items are only constructed
+ * if requested by {@link #getItem(int)}.
+ * 
+ * Pages are immutable.
+ */
+public final class ItemPage implements Serializable {
+
+    /**
+     * Object version ID.
+     */
+    private static final long serialVersionUID = 4781283541094618123L;
+
+    /**
+     * Timestamp of items without creation time.
+     */
+    public static final long UNKNOWN_TIME = Item.UNKNOWN_TIME;
+
+    /**
+     * Item types by ordinal.
+     */
+    private static final Item.Type[] TYPES = Item.Type.values();
+
+    /**
+     * The base URL items are resolved against.
+     */
+    private final String baseUrl;
+
+    /**
+     * Number of items in this page.
+     */
+    private final int count;
+
+    // columns with one element per item
+    private final int[] ids;
+    private final byte[] types;
+    private final String[] images;
+    private final String[] thumbnails;
+    private final String[] sources;
+    private final String[] titles;
+    private final long[] createdMillis;
+    private final int[] createdOffsets;
+    private final boolean[] nsfw;
+    private final int[] sizes;
+    private final String[] mimetypes;
+    private final String[] checksums;
+    private final int[] widths;
+    private final int[] heights;
+    private final int[] upvotes;
+    private final int[] userIds;
+    private final Tag[][] tags;
+    private final int[][] usersUpvoted;
+
+    /**
+     * Construct a page by its builder.
+     * @param builder
+     */
+    private ItemPage(Builder builder) {
+        baseUrl = builder.baseUrl;
+        count = builder.count;
+        ids = Arrays.copyOf(builder.ids, count);
+        types = Arrays.copyOf(builder.types, count);
+        images = Arrays.copyOf(builder.images, count);
+        thumbnails = Arrays.copyOf(builder.thumbnails, count);
+        sources = Arrays.copyOf(builder.sources, count);
+        titles = Arrays.copyOf(builder.titles, count);
+        createdMillis = Arrays.copyOf(builder.createdMillis, count);
+        createdOffsets = Arrays.copyOf(builder.createdOffsets, count);
+        nsfw = Arrays.copyOf(builder.nsfw, count);
+        sizes = Arrays.copyOf(builder.sizes, count);
+        mimetypes = Arrays.copyOf(builder.mimetypes, count);
+        checksums = Arrays.copyOf(builder.checksums, count);
+        widths = Arrays.copyOf(builder.widths, count);
+        heights = Arrays.copyOf(builder.heights, count);
+        upvotes = Arrays.copyOf(builder.upvotes, count);
+        userIds = Arrays.copyOf(builder.userIds, count);
+        tags = Arrays.copyOf(builder.tags, count);
+        usersUpvoted = Arrays.copyOf(builder.usersUpvoted, count);
+    }
+
+    /**
+     * Constructs a page with the fields of decoded items.
+     * 
+     * Used if the codec can't decode pages directly.
+     * 
+     * @param items
+     * @param baseUrl items are resolved against.
+     * @return page with the items in order.
+     */
+    public static ItemPage of(List<Item> items, String baseUrl) {
+        Builder builder = new Builder(baseUrl);
+        ItemTypeAdapter.Fields fields = new ItemTypeAdapter.Fields();
+        for (Item item : items) {
+            fields.reset();
+            fields.id = item.getId();
+            fields.type = item.getType();
+            Item.Image image = item.getImage();
+            if (image != null) {
+                fields.image = image.getImage();
+                fields.thumbnail = image.getThumbnail();
+            }
+            fields.source = item.getSource();
+            fields.title = item.getTitle();
+            fields.created.millis = item.getCreatedMillis();
+            fields.created.offset = item.getCreatedOffset();
+            fields.nsfw = item.isNsfw();
+            fields.size = item.getSize();
+            fields.mimetype = item.getMimetype();
+            fields.checksum = item.getChecksum();
+            fields.width = item.getWidth();
+            fields.height = item.getHeight();
+            fields.upvotes = item.getUpvotes();
+            fields.userId = item.getUserId();
+            fields.tags.addAll(item.getTags());
+            for (int userUpvoted : item.getUsersUpvotedIds()) {
+                fields.addUserUpvoted(userUpvoted);
+            }
+            builder.add(fields);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Number of items in this page.
+     * @return item count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns true if the page contains no items.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * ID of the item at index.
+     * @param index
+     * @return integer id
+     */
+    public int getId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    /**
+     * Type of the item at index.
+     * @param index
+     * @return Type enum or null if unknown
+     */
+    public Item.Type getType(int index) {
+        checkIndex(index);
+        return types[index] < 0 ? null : TYPES[types[index]];
+    }
+
+    /**
+     * Creation time of the item at index.
+     * @param index
+     * @return milliseconds since the epoch or UNKNOWN_TIME.
+     */
+    public long getCreatedMillis(int index) {
+        checkIndex(index);
+        return createdMillis[index];
+    }
+
+    /**
+     * Flag for "Not Safe For Work" of the item at index.
+     * @param index
+     * @return true if nsfw
+     */
+    public boolean isNsfw(int index) {
+        checkIndex(index);
+        return nsfw[index];
+    }
+
+    /**
+     * Size of the full-sized image of the item at index.
+     * @param index
+     * @return bytes
+     */
+    public int getSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+
+    /**
+     * Number of +1 votes of the item at index.
+     * @param index
+     * @return vote count
+     */
+    public int getUpvotes(int index) {
+        checkIndex(index);
+        return upvotes[index];
+    }
+
+    /**
+     * ID of the user that created the item at index.
+     * @param index
+     * @return ID
+     */
+    public int getUserId(int index) {
+        checkIndex(index);
+        return userIds[index];
+    }
+
+    /**
+     * IDs of all items in this page.
+     * @return copy of the ID column
+     */
+    public int[] getIds() {
+        return ids.clone();
+    }
+
+    /**
+     * Number of +1 votes of all items in this page.
+     * @return copy of the upvotes column
+     */
+    public int[] getUpvotes() {
+        return upvotes.clone();
+    }
+
+    /**
+     * Sizes of all items in this page.
+     * @return copy of the size column
+     */
+    public int[] getSizes() {
+        return sizes.clone();
+    }
+
+    /**
+     * Creation times of all items in this page.
+     * @return copy of the timestamp column
+     */
+    public long[] getCreatedMillis() {
+        return createdMillis.clone();
+    }
+
+    /**
+     * Constructs the item at index.
+     * @param index
+     * @return new item object
+     */
+    public Item getItem(int index) {
+        checkIndex(index);
+        return new Item(baseUrl, ids[index], getType(index), images[index],
+                thumbnails[index], sources[index], titles[index], createdMillis[index],
+                createdOffsets[index], nsfw[index],
+                sizes[index], mimetypes[index], checksums[index], widths[index],
+                heights[index], upvotes[index], userIds[index], tags[index].clone(),
+                usersUpvoted[index].clone());
+    }
+
+    /**
+     * View of the page as a list, items are constructed on access.
+     * @return unmodifiable list of item objects
+     */
+    public List<Item> getItems() {
+        return new AbstractList<Item>() {
+            public Item get(int index) {
+                return getItem(index);
+            }
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Throws if the index is outside of this page.
+     * @param index
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+    }
+
+    /**
+     * Appends decoded items to the columns of a page. (package protected)
+     */
+    static class Builder {
+        private final String baseUrl;
+        private int count;
+        private int[] ids = new int[16];
+        private byte[] types = new byte[16];
+        private String[] images = new String[16];
+        private String[] thumbnails = new String[16];
+        private String[] sources = new String[16];
+        private String[] titles = new String[16];
+        private long[] createdMillis = new long[16];
+        private int[] createdOffsets = new int[16];
+        private boolean[] nsfw = new boolean[16];
+        private int[] sizes = new int[16];
+        private String[] mimetypes = new String[16];
+        private String[] checksums = new String[16];
+        private int[] widths = new int[16];
+        private int[] heights = new int[16];
+        private int[] upvotes = new int[16];
+        private int[] userIds = new int[16];
+        private Tag[][] tags = new Tag[16][];
+        private int[][] usersUpvoted = new int[16][];
+
+        /**
+         * Construct a builder of a page resolved against baseUrl.
+         * @param baseUrl
+         */
+        Builder(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * Appends the decoded fields of an item.
+         * @param fields
+         */
+        void add(ItemTypeAdapter.Fields fields) {
+            if (count == ids.length) {
+                grow(count * 2);
+            }
+            int i = count++;
+            ids[i] = fields.id;
+            types[i] = fields.type != null ? (byte) fields.type.ordinal() : -1;
+            images[i] = fields.image;
+            thumbnails[i] = fields.thumbnail;
+            sources[i] = fields.source;
+            titles[i] = fields.title;
+            createdMillis[i] = fields.created.millis;
+            createdOffsets[i] = fields.created.offset;
+            nsfw[i] = fields.nsfw;
+            sizes[i] = fields.size;
+            mimetypes[i] = fields.mimetype;
+            checksums[i] = fields.checksum;
+            widths[i] = fields.width;
+            heights[i] = fields.height;
+            upvotes[i] = fields.upvotes;
+            userIds[i] = fields.userId;
+            tags[i] = fields.getTags();
+            usersUpvoted[i] = fields.getUsersUpvoted();
+        }
+
+        /**
+         * Resize all columns.
+         * @param capacity
+         */
+        private void grow(int capacity) {
+            ids = Arrays.copyOf(ids, capacity);
+            types = Arrays.copyOf(types, capacity);
+            images = Arrays.copyOf(images, capacity);
+            thumbnails = Arrays.copyOf(thumbnails, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            createdMillis = Arrays.copyOf(createdMillis, capacity);
+            createdOffsets = Arrays.copyOf(createdOffsets, capacity);
+            nsfw = Arrays.copyOf(nsfw, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            mimetypes = Arrays.copyOf(mimetypes, capacity);
+            checksums = Arrays.copyOf(checksums, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            upvotes = Arrays.copyOf(upvotes, capacity);
+            userIds = Arrays.copyOf(userIds, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+            usersUpvoted = Arrays.copyOf(usersUpvoted, capacity);
+        }
+
+        /**
+         * Constructs the page with the appended items.
+         * @return immutable page
+         */
+        ItemPage build() {
+            return new ItemPage(this);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import li.zeitgeist.api.error.ZeitgeistError;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over all items by requesting one page after another.
+ * 
+ * Pages are requested on demand with the ID of the last item as the
+ * before cursor. If prefetch is enabled the next page is requested
+ * in the background while the current one is consumed, at most two
+ * pages are kept in memory. The background request has its own
+ * cancellation token, linked to the token of the caller, closing
+ * the pager aborts it.
+ */
+public class ItemPager {
+    /**
+     * API instance the pages are requested with.
+     */
+    private final ZeitgeistApi api;
+    /**
+     * Only list items with this tag, null to list all items.
+     */
+    private final String tag;
+    /**
+     * True if the next page is requested in the background.
+     */
+    private final boolean prefetch;
+    /**
+     * The page currently consumed.
+     */
+    private List<Item> page = null;
+    /**
+     * Index of the next item in the current page.
+     */
+    private int index = 0;
+    /**
+     * Cursor of the next page, -1 for the newest items.
+     */
+    private int before = -1;
+    /**
+     * True if the last page was reached or the pager was closed.
+     */
+    private boolean done = false;
+    /**
+     * The next page requested in the background.
+     */
+    private Future<List<Item>> nextPage = null;
+    /**
+     * Token of the page requested in the background.
+     */
+    private CancellationToken nextPageToken = null;
+
+    /**
+     * Construct a pager, use ZeitgeistApi.listAll or listAllByTag. (package protected)
+     * @param api
+     * @param tag or null for all items.
+     * @param prefetch
+     */
+    ItemPager(ZeitgeistApi api, String tag, boolean prefetch) {
+        this.api = api;
+        this.tag = tag;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Returns true if there are more items, requests the next page if necessary.
+     * @return true if more items available
+     * @throws ZeitgeistError
+     */
+    public boolean hasNext() throws ZeitgeistError {
+        while (!done && (page == null || index >= page.size())) {
+            loadPage();
+        }
+        return !done;
+    }
+
+    /**
+     * Returns the next item, requests the next page if necessary.
+     * @return item
+     * @throws ZeitgeistError
+     */
+    public Item next() throws ZeitgeistError {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.get(index++);
+    }
+
+    /**
+     * Stops the iteration and cancels a page requested in the background.
+     */
+    public void close() {
+        done = true;
+        page = null;
+        if (nextPage != null) {
+            nextPageToken.cancel(); // aborts the request in flight
+            nextPage.cancel(true);
+            nextPage = null;
+            nextPageToken = null;
+        }
+    }
+
+    /**
+     * Replaces the current page by the next one.
+     * @throws ZeitgeistError
+     */
+    private void loadPage() throws ZeitgeistError {
+        page = null; // allow the consumed page to be collected
+        if (nextPage != null) {
+            Future<List<Item>> future = nextPage;
+            nextPage = null;
+            nextPageToken = null;
+            page = await(future);
+        }
+        else {
+            page = fetch(before);
+        }
+        index = 0;
+
+        if (page == null || page.isEmpty()) {
+            close();
+            return;
+        }
+        for (Item item : page) {
+            if (before == -1 || item.getId() < before) {
+                before = item.getId();
+            }
+        }
+
+        if (prefetch) {
+            final int cursor = before;
+            final Deadline deadline = Deadline.current();
+            final CancellationToken token = new CancellationToken(CancellationToken.current());
+            nextPageToken = token;
+            nextPage = api.getExecutor().submit(new Callable<List<Item>>() {
+                public List<Item> call() throws ZeitgeistError {
+                    Deadline previous = Deadline.set(deadline);
+                    CancellationToken previousToken = CancellationToken.set(token);
+                    try {
+                        return fetch(cursor);
+                    } finally {
+                        Deadline.set(previous);
+                        CancellationToken.set(previousToken);
+                        token.unlink();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Request the page of items before the cursor.
+     * @param cursor
+     * @return list of items
+     * @throws ZeitgeistError
+     */
+    private List<Item> fetch(int cursor) throws ZeitgeistError {
+        if (tag == null) {
+            return api.list(cursor, -1);
+        }
+        return api.listByTag(tag, cursor, -1);
+    }
+
+    /**
+     * Waits for a page requested in the background.
+     * @param future
+     * @return list of items
+     * @throws ZeitgeistError
+     */
+    private List<Item> await(Future<List<Item>> future) throws ZeitgeistError {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ZeitgeistError) {
+                throw (ZeitgeistError) e.getCause();
+            }
+            throw new ZeitgeistError("ExecutionException: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ZeitgeistError("InterruptedException: " + e.getMessage());
+        }
+    }
+}
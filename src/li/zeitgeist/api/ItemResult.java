@@ -0,0 +1,99 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import li.zeitgeist.api.error.ZeitgeistError;
+
+/**
+ * Outcome of fetching a single item in a bulk request.
+ * 
+ * Contains either the item or the error that occured while
+ * requesting it.
+ */
+public class ItemResult {
+    /**
+     * ID of the requested item.
+     */
+    private final int id;
+    /**
+     * The item, null if the request failed.
+     */
+    private final Item item;
+    /**
+     * The error, null if the request succeeded.
+     */
+    private final ZeitgeistError error;
+
+    /**
+     * Construct the outcome of a successful request.
+     * @param id
+     * @param item
+     */
+    public ItemResult(int id, Item item) {
+        this.id = id;
+        this.item = item;
+        this.error = null;
+    }
+
+    /**
+     * Construct the outcome of a failed request.
+     * @param id
+     * @param error
+     */
+    public ItemResult(int id, ZeitgeistError error) {
+        this.id = id;
+        this.item = null;
+        this.error = error;
+    }
+
+    /**
+     * ID of the requested item.
+     * @return ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * The item, null if the request failed.
+     * @return item object
+     */
+    public Item getItem() {
+        return item;
+    }
+
+    /**
+     * The error that occured, null if the request succeeded.
+     * @return error object
+     */
+    public ZeitgeistError getError() {
+        return error;
+    }
+
+    /**
+     * Returns true if the item was found.
+     * @return true if successful
+     */
+    public boolean isSuccess() {
+        return item != null;
+    }
+
+    public String toString() {
+        return isSuccess() ? "[" + id + ": ok]" : "[" + id + ": " + error.getMessage() + "]";
+    }
+}
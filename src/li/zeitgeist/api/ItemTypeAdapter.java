@@ -0,0 +1,355 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Decodes and encodes item objects. (package protected)
+ * 
+ * Reads the fields directly from the stream without building
+ * a map of primitives first. The fields are read into a reusable
+ * {@link Fields} object, either to construct an item or to be
+ * appended to the columns of an item page.
+ */
+class ItemTypeAdapter extends TypeAdapter<Item> {
+    /**
+     * The base URL items are resolved against.
+     */
+    private final String baseUrl;
+    /**
+     * Adapter for the tags embedded in an item.
+     */
+    private final TagTypeAdapter tagAdapter;
+
+    /**
+     * Decoded fields of one item. (package protected)
+     * 
+     * Reused for every item of a page, the tag list and upvoter
+     * buffer grow to the largest item and are copied out.
+     */
+    static class Fields {
+        int id;
+        Item.Type type;
+        String image;
+        String thumbnail;
+        String source;
+        String title;
+        final Timestamps.Parsed created = new Timestamps.Parsed();
+        boolean nsfw;
+        int size;
+        String mimetype;
+        String checksum;
+        int width;
+        int height;
+        int upvotes;
+        int userId;
+        final List<Tag> tags = new ArrayList<Tag>();
+        int[] usersUpvoted = new int[8];
+        int usersUpvotedCount;
+
+        /**
+         * Resets all fields to their defaults.
+         */
+        void reset() {
+            id = 0;
+            type = null;
+            image = null;
+            thumbnail = null;
+            source = null;
+            title = null;
+            created.millis = Item.UNKNOWN_TIME;
+            created.offset = 0;
+            nsfw = false;
+            size = 0;
+            mimetype = null;
+            checksum = null;
+            width = -1;
+            height = -1;
+            upvotes = 0;
+            userId = -1;
+            tags.clear();
+            usersUpvotedCount = 0;
+        }
+
+        /**
+         * Appends the ID of an upvoting user.
+         * @param userId
+         */
+        void addUserUpvoted(int userId) {
+            if (usersUpvotedCount == usersUpvoted.length) {
+                usersUpvoted = Arrays.copyOf(usersUpvoted, usersUpvotedCount * 2);
+            }
+            usersUpvoted[usersUpvotedCount++] = userId;
+        }
+
+        /**
+         * Copy of the tags.
+         * @return array of tags
+         */
+        Tag[] getTags() {
+            return tags.toArray(new Tag[tags.size()]);
+        }
+
+        /**
+         * Copy of the upvoting user IDs.
+         * @return array of user IDs
+         */
+        int[] getUsersUpvoted() {
+            return Arrays.copyOf(usersUpvoted, usersUpvotedCount);
+        }
+    }
+
+    /**
+     * Construct an adapter for items of the installation at baseUrl.
+     * @param baseUrl
+     * @param tagAdapter
+     */
+    public ItemTypeAdapter(String baseUrl, TagTypeAdapter tagAdapter) {
+        this.baseUrl = baseUrl;
+        this.tagAdapter = tagAdapter;
+    }
+
+    /**
+     * The base URL items are resolved against.
+     * @return url string
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    @Override
+    public Item read(JsonReader reader) throws IOException {
+        Fields fields = new Fields();
+        if (!read(reader, fields)) {
+            return null;
+        }
+        return new Item(baseUrl, fields.id, fields.type, fields.image, fields.thumbnail,
+                fields.source, fields.title, fields.created.millis, fields.created.offset,
+                fields.nsfw, fields.size,
+                fields.mimetype, fields.checksum, fields.width, fields.height,
+                fields.upvotes, fields.userId, fields.getTags(), fields.getUsersUpvoted());
+    }
+
+    /**
+     * Reads the next item object into the fields.
+     * @param reader
+     * @param fields reset before reading.
+     * @return false if the item was null.
+     * @throws IOException
+     */
+    public boolean read(JsonReader reader, Fields fields) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return false;
+        }
+        fields.reset();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            }
+            else if (key.equals("id")) {
+                fields.id = reader.nextInt();
+            }
+            else if (key.equals("type")) {
+                fields.type = parseType(reader.nextString());
+            }
+            else if (key.equals("image")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String imageKey = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    }
+                    else if (imageKey.equals("image")) {
+                        fields.image = reader.nextString();
+                    }
+                    else if (imageKey.equals("thumbnail")) {
+                        fields.thumbnail = reader.nextString();
+                    }
+                    else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }
+            else if (key.equals("source")) {
+                fields.source = reader.nextString();
+            }
+            else if (key.equals("title")) {
+                fields.title = reader.nextString();
+            }
+            else if (key.equals("created_at")) {
+                Timestamps.parse(reader.nextString(), fields.created);
+            }
+            else if (key.equals("nsfw")) {
+                fields.nsfw = reader.nextBoolean();
+            }
+            else if (key.equals("size")) {
+                fields.size = reader.nextInt();
+            }
+            else if (key.equals("mimetype")) {
+                fields.mimetype = reader.nextString();
+            }
+            else if (key.equals("checksum")) {
+                fields.checksum = reader.nextString();
+            }
+            else if (key.equals("dimensions")) {
+                long dimensions = Item.parseDimensions(reader.nextString());
+                fields.width = Item.width(dimensions);
+                fields.height = Item.height(dimensions);
+            }
+            else if (key.equals("upvote_count")) {
+                fields.upvotes = reader.nextInt();
+            }
+            else if (key.equals("dm_user_id")) {
+                fields.userId = reader.nextInt();
+            }
+            else if (key.equals("tags")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Tag tag = tagAdapter.read(reader);
+                    if (tag != null) {
+                        fields.tags.add(tag);
+                    }
+                }
+                reader.endArray();
+            }
+            else if (key.equals("users_upvoted")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    }
+                    else {
+                        fields.addUserUpvoted(reader.nextInt());
+                    }
+                }
+                reader.endArray();
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return true;
+    }
+
+    @Override
+    public void write(JsonWriter writer, Item item) throws IOException {
+        if (item == null) {
+            writer.nullValue();
+            return;
+        }
+        writer.beginObject();
+        writer.name("id").value(item.getId());
+        if (item.getType() != null) {
+            writer.name("type").value(typeName(item.getType()));
+        }
+        Item.Image image = item.getImage();
+        if (image != null) {
+            writer.name("image").beginObject();
+            if (image.getImage() != null) {
+                writer.name("image").value(image.getImage());
+            }
+            if (image.getThumbnail() != null) {
+                writer.name("thumbnail").value(image.getThumbnail());
+            }
+            writer.endObject();
+        }
+        if (item.getSource() != null) {
+            writer.name("source").value(item.getSource());
+        }
+        if (item.getTitle() != null) {
+            writer.name("title").value(item.getTitle());
+        }
+        if (item.getCreated() != null) {
+            writer.name("created_at").value(item.getCreated().toString());
+        }
+        writer.name("nsfw").value(item.isNsfw());
+        writer.name("size").value(item.getSize());
+        if (item.getMimetype() != null) {
+            writer.name("mimetype").value(item.getMimetype());
+        }
+        if (item.getChecksum() != null) {
+            writer.name("checksum").value(item.getChecksum());
+        }
+        if (item.getDimensions() != null) {
+            writer.name("dimensions").value(item.getDimensions().toString());
+        }
+        writer.name("upvote_count").value(item.getUpvotes());
+        writer.name("dm_user_id").value(item.getUserId());
+        writer.name("tags").beginArray();
+        for (int i = 0; i < item.getTagCount(); i++) {
+            tagAdapter.write(writer, item.getTag(i));
+        }
+        writer.endArray();
+        writer.name("users_upvoted").beginArray();
+        for (int userId : item.getUsersUpvotedIds()) {
+            writer.value(userId);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     * Returns the item type by its json name.
+     * @param typeString
+     * @return type enum or null if unknown
+     */
+    private static Item.Type parseType(String typeString) {
+        if (typeString.equals("image")) {
+            return Item.Type.IMAGE;
+        }
+        else if (typeString.equals("audio")) {
+            return Item.Type.AUDIO;
+        }
+        else if (typeString.equals("video")) {
+            return Item.Type.VIDEO;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the json name of the item type.
+     * @param type
+     * @return type string
+     */
+    private static String typeName(Item.Type type) {
+        switch (type) {
+        case AUDIO:
+            return "audio";
+        case VIDEO:
+            return "video";
+        default:
+            return "image";
+        }
+    }
+}
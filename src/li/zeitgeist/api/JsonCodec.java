@@ -0,0 +1,42 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import li.zeitgeist.api.error.ZeitgeistError;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Decodes the json responses of the zeitgeist API.
+ * 
+ * Implementations are shared by all requests of an API instance
+ * and must be thread safe. The default implementation is based
+ * on gson, see {@link GsonCodec}.
+ */
+public interface JsonCodec {
+    /**
+     * Decode a response from the reader.
+     * 
+     * @param reader of the response content.
+     * @return decoded response.
+     * @throws IOException if reading the content failed.
+     * @throws ZeitgeistError if the content is no valid response.
+     */
+    public Response decode(Reader reader) throws IOException, ZeitgeistError;
+}
@@ -0,0 +1,39 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+/**
+ * Resource lanes the endpoint families are grouped into.
+ * 
+ * Reads are cheap and latency sensitive, mutations change items
+ * and uploads transfer large amounts of data.
+ */
+public enum Lane {
+    /**
+     * Listing, querying and searching.
+     */
+    READ,
+    /**
+     * Updating, upvoting and deleting items.
+     */
+    MUTATION,
+    /**
+     * Creating items by upload or remote url.
+     */
+    UPLOAD
+}
@@ -0,0 +1,94 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+/**
+ * Snapshot of the connection pool state of an API instance.
+ * 
+ * The numbers are read at once while holding the pool lock, so
+ * they are consistent with each other at the time of the snapshot.
+ */
+public class PoolStats {
+    /**
+     * Connections currently leased by a running request.
+     */
+    private final int leased;
+    /**
+     * Idle connections kept alive for reuse.
+     */
+    private final int available;
+    /**
+     * Threads waiting for a connection to become available.
+     */
+    private final int pending;
+    /**
+     * Maximum number of connections in total.
+     */
+    private final int max;
+
+    /**
+     * Construct a snapshot of the pool.
+     * @param leased
+     * @param available
+     * @param pending
+     * @param max
+     */
+    public PoolStats(int leased, int available, int pending, int max) {
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.max = max;
+    }
+
+    /**
+     * Connections currently leased by a running request.
+     * @return number of connections
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Idle connections kept alive for reuse.
+     * @return number of connections
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * Threads waiting for a connection to become available.
+     * @return number of threads
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Maximum number of connections in total.
+     * @return number of connections
+     */
+    public int getMax() {
+        return max;
+    }
+
+    public String toString() {
+        return "[leased: " + leased + "; pending: " + pending +
+            "; available: " + available + "; max: " + max + "]";
+    }
+}
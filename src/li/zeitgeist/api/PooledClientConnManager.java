@@ -0,0 +1,79 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.params.ConnPerRoute;
+import org.apache.http.impl.conn.tsccm.ConnPoolByRoute;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+
+/**
+ * Thread safe pooling connection manager. (package protected)
+ * 
+ * Extends the httpclient connection manager to expose the number
+ * of leased, available and pending connections of the pool.
+ */
+class PooledClientConnManager extends ThreadSafeClientConnManager {
+
+    /**
+     * Constructs the connection manager with the default schemes.
+     * @param maxTotal maximum number of connections.
+     * @param maxPerRoute maximum number of connections per host.
+     */
+    public PooledClientConnManager(int maxTotal, int maxPerRoute) {
+        super();
+        setMaxTotal(maxTotal);
+        setDefaultMaxPerRoute(maxPerRoute);
+    }
+
+    @Override
+    protected ConnPoolByRoute createConnectionPool(long connTTL, TimeUnit connTTLTimeUnit) {
+        return new StatsConnPool(connOperator, connPerRoute, connTTL, connTTLTimeUnit);
+    }
+
+    /**
+     * Returns a consistent snapshot of the pool.
+     * @return pool stats
+     */
+    public PoolStats getStats() {
+        return ((StatsConnPool) pool).getStats();
+    }
+
+    /**
+     * Connection pool that allows to read its internal counters.
+     */
+    private static class StatsConnPool extends ConnPoolByRoute {
+
+        public StatsConnPool(ClientConnectionOperator operator, ConnPerRoute connPerRoute,
+                long connTTL, TimeUnit connTTLTimeUnit) {
+            super(operator, connPerRoute, 20, connTTL, connTTLTimeUnit);
+        }
+
+        public PoolStats getStats() {
+            getLock().lock();
+            try {
+                return new PoolStats(leasedConnections.size(), freeConnections.size(),
+                        waitingThreads.size(), maxTotalConnections);
+            } finally {
+                getLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Client side rate limiter with a token bucket per lane.
+ * 
+ * Reads, mutations and uploads are limited separately, a lane
+ * without a rate is not limited. Every request of the API instance
+ * takes a permit of its lane before it is sent. The same permits
+ * can be taken by callers to pace their own work, blocking, with
+ * a timeout or asynchronously.
+ */
+public class RateLimiter {
+    /**
+     * Seconds the thread of the scheduler is kept without permits to schedule.
+     */
+    private static final long SCHEDULER_KEEP_ALIVE = 60;
+    /**
+     * Token bucket per lane, a missing bucket means unlimited.
+     */
+    private final Map<Lane, TokenBucket> buckets = new EnumMap<Lane, TokenBucket>(Lane.class);
+    /**
+     * Schedules the asynchronous permits, created on demand. Its
+     * thread ends when idle, a dropped limiter leaves none behind.
+     */
+    private ScheduledThreadPoolExecutor scheduler = null;
+    /**
+     * True after shutdown, asynchronous permits are rejected.
+     */
+    private boolean shutdown = false;
+
+    /**
+     * Limit the rate of a lane.
+     * @param lane
+     * @param permitsPerSecond sustainable rate of requests.
+     * @param burst number of requests allowed at once.
+     */
+    public synchronized void setRate(Lane lane, double permitsPerSecond, int burst) {
+        buckets.put(lane, new TokenBucket(permitsPerSecond, burst));
+    }
+
+    /**
+     * Remove the limit of a lane.
+     * @param lane
+     */
+    public synchronized void removeRate(Lane lane) {
+        buckets.remove(lane);
+    }
+
+    /**
+     * Take a permit of the lane, waits until it is available.
+     * @param lane
+     * @throws InterruptedException
+     */
+    public void acquire(Lane lane) throws InterruptedException {
+        TokenBucket bucket = getBucket(lane);
+        if (bucket != null) {
+            bucket.acquire();
+        }
+    }
+
+    /**
+     * Take a permit of the lane if it is available within the timeout.
+     * @param lane
+     * @param timeout
+     * @param unit
+     * @return true if the permit was taken
+     * @throws InterruptedException
+     */
+    public boolean tryAcquire(Lane lane, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        TokenBucket bucket = getBucket(lane);
+        return bucket == null || bucket.tryAcquire(timeout, unit);
+    }
+
+    /**
+     * Take a permit of the lane without blocking.
+     * 
+     * The permit is reserved at once, the returned future completes
+     * when it is due. Cancelling the future before returns the
+     * permit to the bucket.
+     * 
+     * @param lane
+     * @return future that completes with the permit
+     * @throws RejectedExecutionException after shutdown.
+     */
+    public Future<?> acquireAsync(Lane lane) {
+        TokenBucket bucket = getBucket(lane);
+        ScheduledThreadPoolExecutor scheduler = getScheduler();
+        long wait = bucket == null ? 0 : bucket.reserve();
+        Future<?> due;
+        try {
+            due = scheduler.schedule(new Runnable() {
+                public void run() {
+                    // the permit is due
+                }
+            }, wait, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) { // shut down meanwhile
+            if (bucket != null) {
+                bucket.release();
+            }
+            throw e;
+        }
+        return new Reservation(scheduler, due, bucket);
+    }
+
+    /**
+     * Stops the scheduler of asynchronous permits, acquireAsync
+     * is rejected afterwards.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private synchronized TokenBucket getBucket(Lane lane) {
+        return buckets.get(lane);
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (shutdown) {
+            throw new RejectedExecutionException("RateLimiter is shut down");
+        }
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1,
+                    new DaemonThreadFactory("zeitgeist-ratelimit"));
+            scheduler.setKeepAliveTime(SCHEDULER_KEEP_ALIVE, TimeUnit.SECONDS);
+            scheduler.allowCoreThreadTimeOut(true);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Future of a reserved permit, cancelling it returns the permit.
+     */
+    private static class Reservation implements Future<Object> {
+        /**
+         * Scheduler the due task is removed from on cancellation.
+         */
+        private final ScheduledThreadPoolExecutor scheduler;
+        /**
+         * Task that completes when the permit is due.
+         */
+        private final Future<?> due;
+        /**
+         * Bucket the permit is returned to, or null if unlimited.
+         */
+        private final TokenBucket bucket;
+
+        public Reservation(ScheduledThreadPoolExecutor scheduler, Future<?> due,
+                TokenBucket bucket) {
+            this.scheduler = scheduler;
+            this.due = due;
+            this.bucket = bucket;
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!due.cancel(mayInterruptIfRunning)) {
+                return false; // the permit was due already
+            }
+            scheduler.remove((Runnable) due);
+            if (bucket != null) {
+                bucket.release();
+            }
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return due.isCancelled();
+        }
+
+        public boolean isDone() {
+            return due.isDone();
+        }
+
+        public Object get() throws InterruptedException, ExecutionException {
+            return due.get();
+        }
+
+        public Object get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return due.get(timeout, unit);
+        }
+    }
+}
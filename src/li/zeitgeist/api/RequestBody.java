@@ -0,0 +1,52 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Content of a request sent by a transport.
+ */
+public interface RequestBody {
+    /**
+     * Media type of the content, like application/x-www-form-urlencoded.
+     * @return content type or null if unknown.
+     */
+    public String getContentType();
+
+    /**
+     * Length of the content in bytes.
+     * @return length or -1 if unknown.
+     */
+    public long getContentLength();
+
+    /**
+     * True if the content can be written more than once, for instance
+     * to retry the request.
+     * @return true if repeatable
+     */
+    public boolean isRepeatable();
+
+    /**
+     * Write the content to the stream of the request.
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,317 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoded response of the zeitgeist API.
+ * 
+ * Contains the fields of every response type, only the fields
+ * included in the response are set. Errors are returned with
+ * a type, message and optionally an inner error.
+ */
+public class Response {
+    /**
+     * HTTP status code of the response.
+     */
+    private int statusCode = -1;
+    /**
+     * List of items, returned by listing and creating items.
+     */
+    private List<Item> items;
+    /**
+     * Listed items decoded into columns, instead of the item list.
+     */
+    private ItemPage page;
+    /**
+     * Single item, returned by item query and update.
+     */
+    private Item item;
+    /**
+     * Tags found by the tag search.
+     */
+    private List<Tag> tags;
+    /**
+     * ID of a deleted item or the existing item of a duplicate error.
+     */
+    private int id = -1;
+    /**
+     * Number of upvotes an item has after upvoting.
+     */
+    private int upvotes = -1;
+    /**
+     * User Id of the authenticated user.
+     */
+    private int userId = -1;
+    /**
+     * The api secret of the authenticated user.
+     */
+    private String apiSecret;
+    /**
+     * The error type, null if the response is no error.
+     */
+    private String type;
+    /**
+     * The error message.
+     */
+    private String message;
+    /**
+     * Inner error that caused the error.
+     */
+    private Response error;
+    /**
+     * URL of a failed remote upload.
+     */
+    private String url;
+
+    /**
+     * HTTP status code of the response.
+     * @return -1 if not set
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * HTTP status code of the response.
+     * @param statusCode
+     */
+    public void setStatusCode(int statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * List of items, returned by listing and creating items.
+     * @return null if not set
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * List of items, returned by listing and creating items.
+     * @param items
+     */
+    public void setItems(List<Item> items) {
+        this.items = items;
+    }
+
+    /**
+     * Listed items decoded into columns, instead of the item list.
+     * @return null if not set
+     */
+    public ItemPage getPage() {
+        return page;
+    }
+
+    /**
+     * Listed items decoded into columns, instead of the item list.
+     * @param page
+     */
+    public void setPage(ItemPage page) {
+        this.page = page;
+    }
+
+    /**
+     * Single item, returned by item query and update.
+     * @return null if not set
+     */
+    public Item getItem() {
+        return item;
+    }
+
+    /**
+     * Single item, returned by item query and update.
+     * @param item
+     */
+    public void setItem(Item item) {
+        this.item = item;
+    }
+
+    /**
+     * Tags found by the tag search.
+     * @return null if not set
+     */
+    public List<Tag> getTags() {
+        return tags;
+    }
+
+    /**
+     * Tags found by the tag search.
+     * @param tags
+     */
+    public void setTags(List<Tag> tags) {
+        this.tags = tags;
+    }
+
+    /**
+     * ID of a deleted item or the existing item of a duplicate error.
+     * @return -1 if not set
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * ID of a deleted item or the existing item of a duplicate error.
+     * @param id
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Number of upvotes an item has after upvoting.
+     * @return -1 if not set
+     */
+    public int getUpvotes() {
+        return upvotes;
+    }
+
+    /**
+     * Number of upvotes an item has after upvoting.
+     * @param upvotes
+     */
+    public void setUpvotes(int upvotes) {
+        this.upvotes = upvotes;
+    }
+
+    /**
+     * User Id of the authenticated user.
+     * @return -1 if not set
+     */
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * User Id of the authenticated user.
+     * @param userId
+     */
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * The api secret of the authenticated user.
+     * @return null if not set
+     */
+    public String getApiSecret() {
+        return apiSecret;
+    }
+
+    /**
+     * The api secret of the authenticated user.
+     * @param apiSecret
+     */
+    public void setApiSecret(String apiSecret) {
+        this.apiSecret = apiSecret;
+    }
+
+    /**
+     * The error type, null if the response is no error.
+     * @return null if not set
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * The error type, null if the response is no error.
+     * @param type
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * The error message.
+     * @return null if not set
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * The error message.
+     * @param message
+     */
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Inner error that caused the error.
+     * @return null if not set
+     */
+    public Response getError() {
+        return error;
+    }
+
+    /**
+     * Inner error that caused the error.
+     * @param error
+     */
+    public void setError(Response error) {
+        this.error = error;
+    }
+
+    /**
+     * URL of a failed remote upload.
+     * @return null if not set
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * URL of a failed remote upload.
+     * @param url
+     */
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Returns a copy with its own item and tag lists. (package protected)
+     * 
+     * The copy has its own lists and inner error response, the
+     * elements are shared: items, item pages and tags are immutable.
+     * 
+     * @return copy of this response
+     */
+    Response copy() {
+        Response copy = new Response();
+        copy.statusCode = statusCode;
+        copy.items = items != null ? new ArrayList<Item>(items) : null;
+        copy.page = page;
+        copy.item = item;
+        copy.tags = tags != null ? new ArrayList<Tag>(tags) : null;
+        copy.id = id;
+        copy.upvotes = upvotes;
+        copy.userId = userId;
+        copy.apiSecret = apiSecret;
+        copy.type = type;
+        copy.message = message;
+        copy.error = error != null ? error.copy() : null;
+        copy.url = url;
+        return copy;
+    }
+}
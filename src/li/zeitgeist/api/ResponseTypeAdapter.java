@@ -0,0 +1,211 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Decodes and encodes the top level response and error objects. (package protected)
+ * 
+ * Only the fields set in the response are encoded, the status
+ * code is no part of the json content.
+ */
+class ResponseTypeAdapter extends TypeAdapter<Response> {
+    /**
+     * Adapter for listed, created and updated items.
+     */
+    private final ItemTypeAdapter itemAdapter;
+    /**
+     * Adapter for tags of the tag search.
+     */
+    private final TagTypeAdapter tagAdapter;
+    /**
+     * True if listed items are decoded into an item page.
+     */
+    private final boolean pages;
+
+    /**
+     * Construct an adapter for responses of the installation at baseUrl.
+     * @param baseUrl
+     */
+    public ResponseTypeAdapter(String baseUrl) {
+        this(baseUrl, false, new TagDictionary());
+    }
+
+    /**
+     * Construct an adapter for responses of the installation at baseUrl.
+     * @param baseUrl
+     * @param pages True if listed items are decoded into an item page.
+     * @param dictionary of the tags shared by the decoded items.
+     */
+    public ResponseTypeAdapter(String baseUrl, boolean pages, TagDictionary dictionary) {
+        tagAdapter = new TagTypeAdapter(dictionary);
+        itemAdapter = new ItemTypeAdapter(baseUrl, tagAdapter);
+        this.pages = pages;
+    }
+
+    @Override
+    public Response read(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Response response = new Response();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            }
+            else if (key.equals("items") && pages) {
+                ItemPage.Builder page = new ItemPage.Builder(itemAdapter.getBaseUrl());
+                ItemTypeAdapter.Fields fields = new ItemTypeAdapter.Fields();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (itemAdapter.read(reader, fields)) {
+                        page.add(fields);
+                    }
+                }
+                reader.endArray();
+                response.setPage(page.build());
+            }
+            else if (key.equals("items")) {
+                List<Item> items = new ArrayList<Item>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Item item = itemAdapter.read(reader);
+                    if (item != null) {
+                        items.add(item);
+                    }
+                }
+                reader.endArray();
+                response.setItems(items);
+            }
+            else if (key.equals("item")) {
+                response.setItem(itemAdapter.read(reader));
+            }
+            else if (key.equals("tags")) {
+                List<Tag> tags = new ArrayList<Tag>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Tag tag = tagAdapter.read(reader);
+                    if (tag != null) {
+                        tags.add(tag);
+                    }
+                }
+                reader.endArray();
+                response.setTags(tags);
+            }
+            else if (key.equals("id")) {
+                response.setId(reader.nextInt());
+            }
+            else if (key.equals("upvotes")) {
+                response.setUpvotes(reader.nextInt());
+            }
+            else if (key.equals("user_id")) {
+                response.setUserId(reader.nextInt());
+            }
+            else if (key.equals("api_secret")) {
+                response.setApiSecret(reader.nextString());
+            }
+            else if (key.equals("type")) {
+                response.setType(reader.nextString());
+            }
+            else if (key.equals("message")) {
+                response.setMessage(reader.nextString());
+            }
+            else if (key.equals("error")) {
+                response.setError(read(reader));
+            }
+            else if (key.equals("url")) {
+                response.setUrl(reader.nextString());
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return response;
+    }
+
+    @Override
+    public void write(JsonWriter writer, Response response) throws IOException {
+        if (response == null) {
+            writer.nullValue();
+            return;
+        }
+        writer.beginObject();
+        List<Item> items = response.getItems();
+        if (items == null && response.getPage() != null) {
+            items = response.getPage().getItems();
+        }
+        if (items != null) {
+            writer.name("items").beginArray();
+            for (Item item : items) {
+                itemAdapter.write(writer, item);
+            }
+            writer.endArray();
+        }
+        if (response.getItem() != null) {
+            writer.name("item");
+            itemAdapter.write(writer, response.getItem());
+        }
+        if (response.getTags() != null) {
+            writer.name("tags").beginArray();
+            for (Tag tag : response.getTags()) {
+                tagAdapter.write(writer, tag);
+            }
+            writer.endArray();
+        }
+        if (response.getId() != -1) {
+            writer.name("id").value(response.getId());
+        }
+        if (response.getUpvotes() != -1) {
+            writer.name("upvotes").value(response.getUpvotes());
+        }
+        if (response.getUserId() != -1) {
+            writer.name("user_id").value(response.getUserId());
+        }
+        if (response.getApiSecret() != null) {
+            writer.name("api_secret").value(response.getApiSecret());
+        }
+        if (response.getType() != null) {
+            writer.name("type").value(response.getType());
+        }
+        if (response.getMessage() != null) {
+            writer.name("message").value(response.getMessage());
+        }
+        if (response.getError() != null) {
+            writer.name("error");
+            write(writer, response.getError());
+        }
+        if (response.getUrl() != null) {
+            writer.name("url").value(response.getUrl());
+        }
+        writer.endObject();
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+import javax.net.ssl.SSLException;
+
+/**
+ * Decides if and when a failed request is retried.
+ * 
+ * Idempotent requests (GET) are retried after connection failures
+ * and on 502, 503 and 504 responses. Other requests (POST) are only
+ * retried if they failed before the request was sent, so an upload
+ * or update is never performed twice. The delay between attempts
+ * grows exponentially and is randomized by full jitter.
+ * 
+ * The retry budget limits retries to a ratio of the requests made,
+ * a failing server is not flooded with retries.
+ */
+public class RetryPolicy {
+    /**
+     * Default maximum number of attempts per request.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    /**
+     * Default delay of the first retry in milliseconds.
+     */
+    public static final long DEFAULT_BASE_DELAY = 100;
+    /**
+     * Default maximum delay between attempts in milliseconds.
+     */
+    public static final long DEFAULT_MAX_DELAY = 5000;
+    /**
+     * Default number of retries earned per request.
+     */
+    public static final double DEFAULT_BUDGET_RATIO = 0.2;
+    /**
+     * Default number of retries that may be spent at once.
+     */
+    public static final int DEFAULT_BUDGET_MAX = 10;
+
+    /**
+     * Maximum number of attempts per request, 1 disables retries.
+     */
+    private final int maxAttempts;
+    /**
+     * Delay of the first retry in milliseconds.
+     */
+    private final long baseDelay;
+    /**
+     * Maximum delay between attempts in milliseconds.
+     */
+    private final long maxDelay;
+    /**
+     * Number of retries earned per request.
+     */
+    private final double budgetRatio;
+    /**
+     * Number of retries that may be spent at once.
+     */
+    private final double budgetMax;
+    /**
+     * Retries currently available.
+     */
+    private double budget;
+    /**
+     * Number of retries performed.
+     */
+    private long retries = 0;
+    /**
+     * Random numbers for the jitter.
+     */
+    private final Random random = new Random();
+
+    /**
+     * Construct a policy with the default values.
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY,
+                DEFAULT_BUDGET_RATIO, DEFAULT_BUDGET_MAX);
+    }
+
+    /**
+     * Construct a policy.
+     * @param maxAttempts per request, 1 disables retries.
+     * @param baseDelay of the first retry in milliseconds.
+     * @param maxDelay between attempts in milliseconds.
+     * @param budgetRatio retries earned per request.
+     * @param budgetMax retries that may be spent at once.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay,
+            double budgetRatio, int budgetMax) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.budgetRatio = budgetRatio;
+        this.budgetMax = budgetMax;
+        this.budget = budgetMax;
+    }
+
+    /**
+     * Returns a policy that never retries.
+     * @return policy instance
+     */
+    public static RetryPolicy disabled() {
+        return new RetryPolicy(1, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns true if the request can be repeated without side effects.
+     * @param request
+     * @return true for GET and HEAD requests
+     */
+    public boolean isIdempotent(TransportRequest request) {
+        String method = request.getMethod();
+        return method.equals("GET") || method.equals("HEAD");
+    }
+
+    /**
+     * Returns true if a response with this status is retried.
+     * @param statusCode
+     * @return true for 502, 503 and 504
+     */
+    public boolean isRetryableStatus(int statusCode) {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Returns true if another attempt is allowed after attempt.
+     * @param attempt number of attempts made so far.
+     * @return true if below the maximum attempts
+     */
+    public boolean hasAttemptsLeft(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    /**
+     * Records a new request, earns a part of a retry for the budget.
+     */
+    public synchronized void onRequest() {
+        budget = Math.min(budgetMax, budget + budgetRatio);
+    }
+
+    /**
+     * Decides if the request is retried after the failure.
+     * 
+     * Spends a retry from the budget if it is.
+     * 
+     * @param request that failed, marked as sent if it may have reached the server.
+     * @param exception the request failed with.
+     * @param attempt number of attempts made so far.
+     * @return true if the request should be retried.
+     */
+    public boolean shouldRetry(TransportRequest request, IOException exception, int attempt) {
+        if (!hasAttemptsLeft(attempt)) {
+            return false;
+        }
+        if (exception instanceof UnknownHostException || exception instanceof SSLException) {
+            return false; // not transient
+        }
+        if (!isIdempotent(request)) {
+            if (request.isSent()) {
+                return false; // the server may have performed it already
+            }
+            RequestBody body = request.getBody();
+            if (body != null && !body.isRepeatable()) {
+                return false;
+            }
+        }
+        synchronized (this) {
+            if (budget < 1) {
+                return false;
+            }
+            budget -= 1;
+            retries++;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the delay before the next attempt.
+     * 
+     * A random delay between zero and the exponential backoff.
+     * 
+     * @param attempt number of attempts made so far.
+     * @return delay in milliseconds
+     */
+    public long getDelay(int attempt) {
+        long backoff = baseDelay << Math.min(attempt - 1, 30);
+        if (backoff <= 0 || backoff > maxDelay) {
+            backoff = maxDelay;
+        }
+        return (long) (random.nextDouble() * backoff);
+    }
+
+    /**
+     * Number of retries performed.
+     * @return number of retries
+     */
+    public synchronized long getRetries() {
+        return retries;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import li.zeitgeist.api.error.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical concurrent requests. (package protected)
+ * 
+ * The first caller of a key executes the request, callers of the
+ * same key arriving while it is in flight wait for its result
+ * instead of sending their own. Every caller gets its own copy
+ * of the response. Waiting callers give up at the deadline of
+ * their thread or when the cancellation token of their thread is
+ * cancelled. If the first caller was cancelled or its deadline
+ * expired they try again, unless they were cancelled or their own
+ * deadline expired as well.
+ */
+class SingleFlight {
+    /**
+     * A request that is executed once for all waiting callers.
+     */
+    public interface Task {
+        public Response execute() throws ZeitgeistError;
+    }
+
+    /**
+     * Milliseconds a waiting caller sleeps before checking its cancellation token again.
+     */
+    private static final long CANCEL_CHECK_INTERVAL = 50;
+
+    /**
+     * Requests in flight by key.
+     */
+    private final Map<String, Flight> flights = new HashMap<String, Flight>();
+    /**
+     * Number of calls that shared the request of another call.
+     */
+    private final AtomicLong collapsed = new AtomicLong();
+
+    /**
+     * Execute the task or wait for the task in flight with the same key.
+     * @param key identifying equal requests, like the URL.
+     * @param task executed if no request of the key is in flight.
+     * @return copy of the response.
+     * @throws ZeitgeistError the error of the shared request.
+     */
+    public Response execute(String key, Task task) throws ZeitgeistError {
+        while (true) {
+            Flight flight;
+            boolean leader = false;
+            synchronized (flights) {
+                flight = flights.get(key);
+                if (flight == null) {
+                    flight = new Flight();
+                    flights.put(key, flight);
+                    leader = true;
+                }
+            }
+
+            if (leader) {
+                try {
+                    flight.response = task.execute();
+                } catch (ZeitgeistError e) {
+                    flight.error = e;
+                    throw e;
+                } finally {
+                    synchronized (flights) {
+                        flights.remove(key);
+                    }
+                    flight.done.countDown();
+                }
+                return flight.response.copy();
+            }
+
+            collapsed.incrementAndGet();
+            Deadline deadline = Deadline.current();
+            CancellationToken token = CancellationToken.current();
+            await(flight, deadline, token);
+            if (flight.error instanceof CancelledError) {
+                if (token == null || !token.isCancelled()) {
+                    continue; // only the leader was cancelled, try again
+                }
+            }
+            if (flight.error instanceof DeadlineExceededError) {
+                if (deadline == null || !deadline.isExpired()) {
+                    continue; // only the deadline of the leader expired, try again
+                }
+            }
+            if (flight.error != null) {
+                throw flight.error;
+            }
+            if (flight.response == null) { // the leader failed unchecked
+                throw new ZeitgeistError("Coalesced request failed");
+            }
+            return flight.response.copy();
+        }
+    }
+
+    /**
+     * Wait until the flight is done.
+     * 
+     * With a token the wait is split into intervals of
+     * CANCEL_CHECK_INTERVAL, the token is checked between them.
+     * 
+     * @param flight
+     * @param deadline or null.
+     * @param token or null.
+     * @throws DeadlineExceededError if the deadline expired first.
+     * @throws CancelledError if the token was cancelled first.
+     * @throws ZeitgeistError if interrupted.
+     */
+    private static void await(Flight flight, Deadline deadline, CancellationToken token)
+      throws ZeitgeistError {
+        try {
+            while (true) {
+                if (token != null) {
+                    token.checkCancelled();
+                }
+                long timeout = Long.MAX_VALUE;
+                if (deadline != null) {
+                    timeout = deadline.remaining(TimeUnit.NANOSECONDS);
+                    if (timeout <= 0) {
+                        throw new DeadlineExceededError();
+                    }
+                }
+                if (token != null) {
+                    timeout = Math.min(timeout, TimeUnit.MILLISECONDS.toNanos(CANCEL_CHECK_INTERVAL));
+                }
+                if (timeout == Long.MAX_VALUE) {
+                    flight.done.await();
+                    return;
+                }
+                if (flight.done.await(timeout, TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ZeitgeistError("InterruptedException: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Number of calls that shared the request of another call.
+     * @return number of collapsed calls
+     */
+    public long getCollapsed() {
+        return collapsed.get();
+    }
+
+    /**
+     * Result of a request in flight, published by the latch.
+     */
+    private static class Flight {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Response response;
+        private ZeitgeistError error;
+    }
+}
@@ -33,15 +33,15 @@ public class Tag implements Serializable {
     /**
      * Unique internal ID of this tag.
      */
-    private int id;
+    private final int id;
     /**
      * The tag itself.
      */
-    private String name;
+    private final String name;
     /**
      * Number of items that are associated with this tag.
      */
-    private int count;
+    private final int count;
 
     /**
      * Constructs a tag by json primitive map.
@@ -53,6 +53,18 @@ public class Tag implements Serializable {
         count = ((Double)tagObject.get("count")).intValue();
     }
 
+    /**
+     * Constructs a tag by decoded json fields. (package protected)
+     * @param id
+     * @param name
+     * @param count
+     */
+    Tag(int id, String name, int count) {
+        this.id = id;
+        this.name = name;
+        this.count = count;
+    }
+
     /**
      * Unique internal ID.
      * @return integer
@@ -0,0 +1,96 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Shares the tag objects of decoded items by tag ID. (package protected)
+ * 
+ * Popular tags are repeated across many items, the dictionary
+ * returns the same tag instance for identical tags, so decoded
+ * items only keep one tag object and name per tag. The
+ * dictionary is a fixed number of slots indexed by the tag ID,
+ * a tag replaces the one in its slot if the IDs differ or its
+ * name or count changed. The size is bounded and no lookup
+ * blocks, concurrent lookups at worst store different but
+ * equal tags.
+ */
+class TagDictionary {
+    /**
+     * Default number of slots.
+     */
+    public static final int DEFAULT_SIZE = 4096;
+
+    /**
+     * The tags by their ID modulo the number of slots.
+     */
+    private final AtomicReferenceArray<Tag> slots;
+
+    /**
+     * Mask of the slot index, the number of slots minus one.
+     */
+    private final int mask;
+
+    /**
+     * Construct a dictionary with the default number of slots.
+     */
+    public TagDictionary() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Construct a dictionary with the number of slots.
+     * @param size rounded up to a power of two.
+     */
+    public TagDictionary(int size) {
+        int slotCount = Integer.highestOneBit(Math.max(1, size));
+        if (slotCount < size) {
+            slotCount <<= 1;
+        }
+        slots = new AtomicReferenceArray<Tag>(slotCount);
+        mask = slotCount - 1;
+    }
+
+    /**
+     * Returns the shared tag with the fields.
+     * @param id
+     * @param name
+     * @param count
+     * @return tag instance, created if not in the dictionary.
+     */
+    public Tag get(int id, String name, int count) {
+        int slot = id & mask;
+        Tag tag = slots.get(slot);
+        if (tag != null && tag.getId() == id && tag.getCount() == count
+                && (name == null ? tag.getName() == null : name.equals(tag.getName()))) {
+            return tag;
+        }
+        tag = new Tag(id, name, count);
+        slots.set(slot, tag);
+        return tag;
+    }
+
+    /**
+     * Number of slots.
+     * @return maximum number of tags
+     */
+    public int size() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Decodes and encodes tag objects. (package protected)
+ * 
+ * Identical tags are decoded to the shared instance of the
+ * tag dictionary.
+ */
+class TagTypeAdapter extends TypeAdapter<Tag> {
+    /**
+     * Dictionary of the shared tag instances.
+     */
+    private final TagDictionary dictionary;
+
+    /**
+     * Construct an adapter with its own dictionary.
+     */
+    public TagTypeAdapter() {
+        this(new TagDictionary());
+    }
+
+    /**
+     * Construct an adapter that shares tags with the dictionary.
+     * @param dictionary
+     */
+    public TagTypeAdapter(TagDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Tag read(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        int id = 0;
+        String name = null;
+        int count = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            }
+            else if (key.equals("id")) {
+                id = reader.nextInt();
+            }
+            else if (key.equals("tagname")) {
+                name = reader.nextString();
+            }
+            else if (key.equals("count")) {
+                count = reader.nextInt();
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return dictionary.get(id, name, count);
+    }
+
+    @Override
+    public void write(JsonWriter writer, Tag tag) throws IOException {
+        if (tag == null) {
+            writer.nullValue();
+            return;
+        }
+        writer.beginObject();
+        writer.name("id").value(tag.getId());
+        if (tag.getName() != null) {
+            writer.name("tagname").value(tag.getName());
+        }
+        writer.name("count").value(tag.getCount());
+        writer.endObject();
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import org.joda.time.DateTime;
+
+/**
+ * Parses the ISO-8601 timestamps of the API. (package protected)
+ * 
+ * Timestamps in the fixed format the API sends them, for instance
+ * <code>2012-02-25T07:36:12+01:00</code>, optionally with a fraction
+ * of a second and with <code>Z</code> or an offset without colon,
+ * are parsed directly into milliseconds without allocating. Any
+ * other timestamp is parsed by the Joda-Time ISO parser.
+ */
+class Timestamps {
+    /**
+     * Returned by the fast path if the timestamp is not in the fixed format.
+     */
+    private static final long INVALID = Long.MIN_VALUE;
+
+    /**
+     * Offset of a timestamp that is not in the fixed format.
+     */
+    private static final int INVALID_OFFSET = Integer.MIN_VALUE;
+
+    /**
+     * Length of the date and time up to the seconds.
+     */
+    private static final int SECONDS_END = 19;
+
+    /**
+     * Instant and offset of a parsed timestamp. (package protected)
+     * 
+     * Reused for every timestamp parsed into it.
+     */
+    static class Parsed {
+        /**
+         * Milliseconds since the epoch.
+         */
+        long millis;
+        /**
+         * Offset from UTC in milliseconds.
+         */
+        int offset;
+    }
+
+    /**
+     * Parses the instant and offset of an ISO-8601 timestamp.
+     * 
+     * Timestamps without offset are in the default time zone.
+     * 
+     * @param timestamp
+     * @param parsed set to the instant and offset.
+     * @throws IllegalArgumentException if the timestamp is invalid.
+     */
+    public static void parse(String timestamp, Parsed parsed) {
+        int index = offsetIndex(timestamp);
+        int offset = index < 0 ? INVALID_OFFSET : parseOffset(timestamp, index);
+        long millis = offset == INVALID_OFFSET ? INVALID : parseFixed(timestamp, index, offset);
+        if (millis != INVALID) {
+            parsed.millis = millis;
+            parsed.offset = offset;
+            return;
+        }
+        DateTime dateTime = DateTime.parse(timestamp);
+        parsed.millis = dateTime.getMillis();
+        parsed.offset = dateTime.getZone().getOffset(parsed.millis);
+    }
+
+    /**
+     * Parses the date and time of a timestamp in the fixed format.
+     * @param s timestamp
+     * @param index of the offset.
+     * @param offset parsed offset in milliseconds.
+     * @return milliseconds since the epoch or INVALID.
+     */
+    private static long parseFixed(String s, int index, int offset) {
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 59) {
+            return INVALID;
+        }
+        int millisOfSecond = 0;
+        for (int i = SECONDS_END + 1, scale = 100; i < index; i++, scale /= 10) {
+            millisOfSecond += (s.charAt(i) - '0') * scale; // digits beyond millis add 0
+        }
+        long seconds = ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60 + second;
+        return seconds * 1000 + millisOfSecond - offset;
+    }
+
+    /**
+     * Returns the index of the offset after the seconds and fraction.
+     * @param s timestamp
+     * @return index or -1 if the date and time are not in the fixed format.
+     */
+    private static int offsetIndex(String s) {
+        int length = s.length();
+        if (length <= SECONDS_END || s.charAt(4) != '-' || s.charAt(7) != '-'
+                || s.charAt(10) != 'T' || s.charAt(13) != ':' || s.charAt(16) != ':') {
+            return -1;
+        }
+        int index = SECONDS_END;
+        if (s.charAt(index) == '.') {
+            index++;
+            while (index < length && isDigit(s.charAt(index))) {
+                index++;
+            }
+            if (index == SECONDS_END + 1 || index > SECONDS_END + 10) {
+                return -1; // no digits or more than nanoseconds
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Parses the offset that ends the timestamp.
+     * @param s timestamp
+     * @param index of the offset.
+     * @return offset in milliseconds or INVALID_OFFSET.
+     */
+    private static int parseOffset(String s, int index) {
+        int length = s.length() - index;
+        char sign = index < s.length() ? s.charAt(index) : 0;
+        if (sign == 'Z' && length == 1) {
+            return 0;
+        }
+        if (sign != '+' && sign != '-') {
+            return INVALID_OFFSET;
+        }
+        int hours = digits(s, index + 1, 2);
+        int minutes;
+        if (length == 3) { // +HH
+            minutes = 0;
+        }
+        else if (length == 5) { // +HHMM
+            minutes = digits(s, index + 3, 2);
+        }
+        else if (length == 6 && s.charAt(index + 3) == ':') { // +HH:MM
+            minutes = digits(s, index + 4, 2);
+        }
+        else {
+            return INVALID_OFFSET;
+        }
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return INVALID_OFFSET;
+        }
+        int offset = (hours * 60 + minutes) * 60000;
+        return sign == '-' ? -offset : offset;
+    }
+
+    /**
+     * Parses a fixed number of decimal digits.
+     * @param s
+     * @param index of the first digit.
+     * @param count of digits.
+     * @return value or -1 if not all characters are digits.
+     */
+    private static int digits(String s, int index, int count) {
+        if (index + count > s.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = index; i < index + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns true for the ASCII digits.
+     * @param c
+     * @return true if digit
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Number of days of a month in the proleptic Gregorian calendar.
+     * @param year
+     * @param month 1 to 12
+     * @return days
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     * @param year
+     * @param month 1 to 12
+     * @param day 1 to 31
+     * @return epoch day
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
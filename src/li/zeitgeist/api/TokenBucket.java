@@ -0,0 +1,126 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that limits the rate of requests.
+ * 
+ * Permits are added at a constant rate up to the burst size. A
+ * request takes a permit, if none is available it waits until the
+ * permit is due. Waiting requests reserve their permit at once, so
+ * they are served in order.
+ */
+public class TokenBucket {
+    /**
+     * Permits added per nanosecond.
+     */
+    private final double ratePerNano;
+    /**
+     * Maximum number of permits stored.
+     */
+    private final double burst;
+    /**
+     * Permits available, negative if reserved in advance.
+     */
+    private double permits;
+    /**
+     * Time (System.nanoTime) of the last refill.
+     */
+    private long refilledAt;
+
+    /**
+     * Construct a bucket, initially full.
+     * @param permitsPerSecond added to the bucket.
+     * @param burst maximum number of permits stored.
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this.ratePerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(burst, 1);
+        this.permits = this.burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Take a permit, waits until it is available.
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        sleep(reserve(0, true));
+    }
+
+    /**
+     * Take a permit if it is available within the timeout.
+     * @param timeout
+     * @param unit
+     * @return true if the permit was taken
+     * @throws InterruptedException
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long wait = reserve(unit.toNanos(timeout), false);
+        if (wait < 0) {
+            return false;
+        }
+        sleep(wait);
+        return true;
+    }
+
+    /**
+     * Reserve a permit and return the time until it is due.
+     * 
+     * The caller must not use the permit before.
+     * 
+     * @return nanoseconds to wait
+     */
+    public long reserve() {
+        return reserve(0, true);
+    }
+
+    /**
+     * Return a reserved permit that is not used.
+     */
+    public synchronized void release() {
+        permits = Math.min(burst, permits + 1);
+    }
+
+    /**
+     * Reserve a permit if it is due within the timeout.
+     * @param timeout nanoseconds the caller is willing to wait.
+     * @param always True to reserve regardless of the timeout.
+     * @return nanoseconds to wait, -1 if not reserved
+     */
+    private synchronized long reserve(long timeout, boolean always) {
+        long now = System.nanoTime();
+        permits = Math.min(burst, permits + (now - refilledAt) * ratePerNano);
+        refilledAt = now;
+
+        long wait = permits >= 1 ? 0 : (long) Math.ceil((1 - permits) / ratePerNano);
+        if (!always && wait > timeout) {
+            return -1;
+        }
+        permits -= 1;
+        return wait;
+    }
+
+    private static void sleep(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+}
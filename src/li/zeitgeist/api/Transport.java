@@ -0,0 +1,50 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+
+/**
+ * Sends the HTTP requests of the API.
+ * 
+ * Retries, circuit breakers, limits, deadlines and decoding are
+ * done by the API, the transport only performs a single exchange.
+ * Implementations must be thread safe and should mark the request
+ * as sent ({@link TransportRequest#markSent()}) once it may have
+ * reached the server. The abort handler registered with the request
+ * must close its connection at once.
+ */
+public interface Transport {
+    /**
+     * Send the request and return the response.
+     * 
+     * The caller reads and closes the response content, which
+     * releases the connection of the exchange.
+     * 
+     * @param request
+     * @param lane the request belongs to.
+     * @return response with status and content.
+     * @throws IOException
+     */
+    public TransportResponse execute(TransportRequest request, Lane lane) throws IOException;
+
+    /**
+     * Closes all connections, the transport can't be used afterwards.
+     */
+    public void shutdown();
+}
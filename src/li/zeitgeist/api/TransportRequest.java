@@ -0,0 +1,206 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTP request sent by a transport.
+ * 
+ * Besides method, URI, headers and body, the request carries the
+ * state of its exchange shared by the API and the transport: the
+ * transport marks the request as sent once it may have reached the
+ * server, and registers an abort handler that closes its connection
+ * when the API aborts the request. A request is sent once, another
+ * attempt is made with a copy.
+ */
+public class TransportRequest {
+    /**
+     * Closes the connection of an aborted request.
+     */
+    public interface AbortHandler {
+        /**
+         * Called once when the request is aborted, from any thread.
+         */
+        public void onAbort();
+    }
+
+    /**
+     * Request method, like GET or POST.
+     */
+    private final String method;
+    /**
+     * Absolute URI of the request.
+     */
+    private final URI uri;
+    /**
+     * Request headers by name.
+     */
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+    /**
+     * Content of the request, null if it has none.
+     */
+    private RequestBody body = null;
+    /**
+     * True once the request may have reached the server.
+     */
+    private volatile boolean sent = false;
+    /**
+     * True once the request was aborted.
+     */
+    private boolean aborted = false;
+    /**
+     * Handler closing the connection of the request, or null.
+     */
+    private AbortHandler abortHandler = null;
+
+    /**
+     * Construct a request without headers and body.
+     * @param method
+     * @param uri
+     */
+    public TransportRequest(String method, URI uri) {
+        this.method = method;
+        this.uri = uri;
+    }
+
+    /**
+     * Request method, like GET or POST.
+     * @return method name
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Absolute URI of the request.
+     * @return uri
+     */
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * Set a header, replaces a header of the same name.
+     * @param name
+     * @param value
+     */
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    /**
+     * Request headers by name.
+     * @return unmodifiable map of headers
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Set the content of the request.
+     * @param body or null for none.
+     */
+    public void setBody(RequestBody body) {
+        this.body = body;
+    }
+
+    /**
+     * Content of the request.
+     * @return body or null if the request has none.
+     */
+    public RequestBody getBody() {
+        return body;
+    }
+
+    /**
+     * Mark the request as sent, once it may have reached the server.
+     * 
+     * Called by the transport, a request that was not sent is
+     * retried even if it is not idempotent.
+     */
+    public void markSent() {
+        sent = true;
+    }
+
+    /**
+     * True if the request may have reached the server.
+     * @return true if sent
+     */
+    public boolean isSent() {
+        return sent;
+    }
+
+    /**
+     * Set the handler that closes the connection of the request.
+     * 
+     * Called by the transport before the request is sent. If the
+     * request was already aborted, the handler is called at once.
+     * 
+     * @param abortHandler or null to remove it.
+     */
+    public void setAbortHandler(AbortHandler abortHandler) {
+        synchronized (this) {
+            if (!aborted) {
+                this.abortHandler = abortHandler;
+                return;
+            }
+        }
+        if (abortHandler != null) {
+            abortHandler.onAbort();
+        }
+    }
+
+    /**
+     * Abort the request and close its connection.
+     */
+    public void abort() {
+        AbortHandler abortHandler;
+        synchronized (this) {
+            if (aborted) return;
+            aborted = true;
+            abortHandler = this.abortHandler;
+            this.abortHandler = null;
+        }
+        if (abortHandler != null) {
+            abortHandler.onAbort();
+        }
+    }
+
+    /**
+     * True if the request was aborted.
+     * @return true if aborted
+     */
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * Copy method, URI, headers and body for another attempt.
+     * @return new request, not sent and not aborted.
+     */
+    public TransportRequest copy() {
+        TransportRequest copy = new TransportRequest(method, uri);
+        copy.headers.putAll(headers);
+        copy.body = body;
+        return copy;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * HTTP response returned by a transport.
+ * 
+ * The caller reads the content and closes it, which releases the
+ * connection of the exchange. A response that is not read to the
+ * end is discarded by aborting its request instead.
+ */
+public class TransportResponse {
+    /**
+     * HTTP status code.
+     */
+    private final int statusCode;
+    /**
+     * Reason phrase of the status line, may be null.
+     */
+    private final String reasonPhrase;
+    /**
+     * Media type of the content, may be null.
+     */
+    private final String contentType;
+    /**
+     * Length of the content in bytes, -1 if unknown.
+     */
+    private final long contentLength;
+    /**
+     * Content stream, null if the response has no content.
+     */
+    private final InputStream content;
+
+    /**
+     * Construct a response.
+     * @param statusCode
+     * @param reasonPhrase or null.
+     * @param contentType or null if unknown.
+     * @param contentLength or -1 if unknown.
+     * @param content or null if the response has no content.
+     */
+    public TransportResponse(int statusCode, String reasonPhrase, String contentType,
+            long contentLength, InputStream content) {
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.content = content;
+    }
+
+    /**
+     * HTTP status code.
+     * @return status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Reason phrase of the status line.
+     * @return reason phrase or null.
+     */
+    public String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    /**
+     * Media type of the content, like application/json; charset=utf-8.
+     * @return content type or null if unknown.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * The charset parameter of the content type.
+     * @return charset or null if the content type has none.
+     */
+    public String getCharset() {
+        if (contentType == null) {
+            return null;
+        }
+        for (String parameter : contentType.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.regionMatches(true, 0, "charset=", 0, 8)) {
+                String charset = parameter.substring(8).trim();
+                if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\"")) {
+                    charset = charset.substring(1, charset.length() - 1);
+                }
+                return charset.length() > 0 ? charset : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Length of the content in bytes.
+     * @return length or -1 if unknown.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Content stream, closing it releases the connection.
+     * @return stream or null if the response has no content.
+     */
+    public InputStream getContent() {
+        return content;
+    }
+
+    /**
+     * Close the content, releases the connection once read to the end.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (content != null) {
+            content.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+
+/**
+ * Transport using the HttpURLConnection of the JDK.
+ * 
+ * Keeps no connection pool of its own, the JDK keeps connections
+ * alive and reuses them once a response was read completely.
+ * Request bodies are streamed, uploads are not buffered in memory.
+ * 
+ * The lanes are not isolated by this transport, all requests share
+ * the connections of the JDK. Concurrent requests per lane are only
+ * bounded by the concurrency limiters of the API
+ * ({@link ZeitgeistApi#getConcurrencyLimiter(Lane)}), a slow upload
+ * still delays reads waiting for a connection to the same host if
+ * the JDK limit (http.maxConnections) is reached.
+ */
+public class UrlConnectionTransport implements Transport {
+    /**
+     * Timeout in milliseconds to establish a connection.
+     */
+    private volatile int connectTimeout = ZeitgeistApi.DEFAULT_CONNECT_TIMEOUT;
+    /**
+     * Timeout in milliseconds waiting for data of a response.
+     */
+    private volatile int readTimeout = ZeitgeistApi.DEFAULT_SOCKET_TIMEOUT;
+
+    /**
+     * Set the timeout to establish a connection.
+     * @param timeout in milliseconds, 0 for none.
+     */
+    public void setConnectTimeout(int timeout) {
+        this.connectTimeout = timeout;
+    }
+
+    /**
+     * Set the timeout waiting for data of a response.
+     * @param timeout in milliseconds, 0 for none.
+     */
+    public void setReadTimeout(int timeout) {
+        this.readTimeout = timeout;
+    }
+
+    public TransportResponse execute(TransportRequest request, Lane lane) throws IOException {
+        final HttpURLConnection connection =
+            (HttpURLConnection) request.getUri().toURL().openConnection();
+        // aborting the request closes the connection
+        request.setAbortHandler(new TransportRequest.AbortHandler() {
+            public void onAbort() {
+                connection.disconnect();
+            }
+        });
+        if (request.isAborted()) {
+            throw new IOException("Request aborted");
+        }
+
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestMethod(request.getMethod());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        RequestBody body = request.getBody();
+        if (body != null) {
+            connection.setDoOutput(true);
+            if (body.getContentType() != null) {
+                connection.setRequestProperty("Content-Type", body.getContentType());
+            }
+            long length = body.getContentLength();
+            if (length >= 0 && length <= Integer.MAX_VALUE) {
+                connection.setFixedLengthStreamingMode((int) length);
+            }
+            else {
+                connection.setChunkedStreamingMode(0);
+            }
+        }
+
+        try {
+            connection.connect();
+            request.markSent();
+            if (body != null) {
+                OutputStream out = connection.getOutputStream();
+                try {
+                    body.writeTo(out);
+                } finally {
+                    out.close();
+                }
+            }
+
+            int statusCode = connection.getResponseCode();
+            InputStream content = statusCode >= 400 ?
+                connection.getErrorStream() : connection.getInputStream();
+            return new TransportResponse(statusCode, connection.getResponseMessage(),
+                    connection.getContentType(), connection.getContentLength(), content);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+    }
+}
@@ -20,44 +20,147 @@ package li.zeitgeist.api;
 import li.zeitgeist.api.error.*;
 
 import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonParseException;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.mime.MultipartEntity;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
-import org.apache.http.impl.client.AbstractHttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
 
 /**
  * Zeitgeist API methods.
  * 
  * Uses a HTTP interface to communicate with a zeitgeist
  * installation.
+ * 
+ * An instance holds connection pools and, once used, background
+ * threads. It is meant to be created once and shared by all
+ * threads, call {@link #shutdown()} when it is no longer used
+ * to close the pooled connections and stop its threads.
  */
 public class ZeitgeistApi {
     /**
-     * Apache HTTP Client instance.
+     * Default maximum number of connections of the read lane.
+     */
+    public static final int DEFAULT_MAX_READ_CONNECTIONS = 64;
+    /**
+     * Default maximum number of connections of the mutation lane.
+     */
+    public static final int DEFAULT_MAX_MUTATION_CONNECTIONS = 16;
+    /**
+     * Default maximum number of connections of the upload lane.
+     */
+    public static final int DEFAULT_MAX_UPLOAD_CONNECTIONS = 4;
+
+    /**
+     * Default timeout in milliseconds to establish a connection.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    /**
+     * Default timeout in milliseconds between two packets of a response.
+     */
+    public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+    /**
+     * Default timeout in milliseconds to lease a connection from the pool.
+     */
+    public static final long DEFAULT_POOL_TIMEOUT = 30000;
+
+    /**
+     * Default maximum size of a response stored in the cache.
+     */
+    public static final int DEFAULT_MAX_CACHED_RESPONSE_SIZE = 1024 * 1024;
+    /**
+     * Estimated number of items per list page, until the planner learned it.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    /**
+     * Default maximum size of a response body that is parsed.
+     */
+    public static final long DEFAULT_MAX_RESPONSE_SIZE = 16 * 1024 * 1024;
+    /**
+     * Seconds the thread of the deadline scheduler is kept without aborts to run.
+     */
+    private static final long SCHEDULER_KEEP_ALIVE = 60;
+    /**
+     * Scheduler aborting requests at their deadline, shared by all
+     * instances and created on demand.
+     */
+    private static ScheduledThreadPoolExecutor scheduler = null;
+
+    /**
+     * Apache HTTP Client transport, used unless replaced.
+     */
+    private HttpClientTransport httpTransport;
+    /**
+     * Transport the requests are sent with.
+     */
+    private volatile Transport transport;
+    /**
+     * Adaptive limit of concurrent requests per lane.
      */
-    private AbstractHttpClient client;
+    private final Map<Lane, ConcurrencyLimiter> concurrencyLimiters =
+        new EnumMap<Lane, ConcurrencyLimiter>(Lane.class);
     /**
      * Base URL of the zeitgeist installation.
      */
     private String baseUrl;
+    /**
+     * Codec that decodes the json responses, shared by all requests.
+     */
+    private volatile JsonCodec codec;
+    /**
+     * Executor for background work like page prefetching, created on demand.
+     */
+    private ExecutorService executor = null;
+    /**
+     * Timeout in milliseconds of every call, including retries, 0 for none.
+     */
+    private volatile long callTimeout = 0;
+    /**
+     * Decides if and when failed requests are retried.
+     */
+    private volatile RetryPolicy retryPolicy = new RetryPolicy();
+    /**
+     * Circuit breaker per endpoint family.
+     */
+    private final Map<Endpoint, CircuitBreaker> circuitBreakers =
+        new EnumMap<Endpoint, CircuitBreaker>(Endpoint.class);
+    /**
+     * Decides when GET requests are hedged, null to disable hedging.
+     */
+    private volatile HedgePolicy hedgePolicy = null;
+    /**
+     * Limits the rate of requests per lane, unlimited by default.
+     */
+    private final RateLimiter rateLimiter = new RateLimiter();
+    /**
+     * Coalesces identical concurrent GET requests.
+     */
+    private final SingleFlight singleFlight = new SingleFlight();
+    /**
+     * Responses larger than this are aborted.
+     */
+    private volatile long maxResponseSize = DEFAULT_MAX_RESPONSE_SIZE;
     /**
      * User eMail for authentication.
      */
@@ -70,7 +173,7 @@ public class ZeitgeistApi {
     /**
      * User Id we authenticated. 
      */
-    private int userId = -1;
+    private volatile int userId = -1;
 
     /**
      * Construct a API instance with the provided baseUrl.
@@ -78,8 +181,8 @@ public class ZeitgeistApi {
      */
     public ZeitgeistApi(String baseUrl) {
         this.baseUrl = baseUrl;
-        this.client = new DefaultHttpClient();
-        
+        this.codec = new GsonCodec(baseUrl);
+        createClient();
     }
 
     /**
@@ -93,7 +196,8 @@ public class ZeitgeistApi {
         this.baseUrl = baseUrl;
         this.email = email;
         this.apiSecret = apiSecret;
-        this.client = new DefaultHttpClient();
+        this.codec = new GsonCodec(baseUrl);
+        createClient();
         
         if (!apiSecret.equals("")) {
             try {
@@ -105,6 +209,479 @@ public class ZeitgeistApi {
         }
     }
 
+    /**
+     * Construct a API instance with authentication and open connections ahead.
+     * @param baseUrl
+     * @param email
+     * @param apiSecret empty for no authentication.
+     * @param warmUpConnections number of read connections to open.
+     * @see #warmUp(int)
+     */
+    public ZeitgeistApi(String baseUrl, String email, String apiSecret, int warmUpConnections) {
+        this(baseUrl, email, apiSecret);
+        warmUp(warmUpConnections);
+    }
+
+    /**
+     * Creates the HTTP client transport with a thread safe connection
+     * pool per lane.
+     * 
+     * The same API instance can be used by multiple threads at
+     * once, connections are kept alive and reused. Uploads,
+     * mutations and reads use separate pools so long uploads
+     * can't starve the reads.
+     */
+    private void createClient() {
+        for (Endpoint endpoint : Endpoint.values()) {
+            circuitBreakers.put(endpoint, CircuitBreaker.forEndpoint(endpoint));
+        }
+        httpTransport = new HttpClientTransport();
+        transport = httpTransport;
+        for (Lane lane : Lane.values()) {
+            concurrencyLimiters.put(lane, new ConcurrencyLimiter(
+                    ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, 1, httpTransport.getMaxConnections(lane)));
+        }
+    }
+
+    /**
+     * Replace the transport the requests are sent with.
+     * 
+     * The timeout methods of this instance configure the timeouts
+     * of an HttpClientTransport or UrlConnectionTransport, the
+     * connection pool and cache methods only those of an
+     * HttpClientTransport. For other transports they throw an
+     * IllegalStateException, configure the transport itself.
+     * 
+     * @param transport thread safe transport instance.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * The transport the requests are sent with.
+     * @return transport instance
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * The transport the requests are sent with, if it is an HTTP client transport.
+     * @return transport instance
+     * @throws IllegalStateException if another transport is used.
+     */
+    private HttpClientTransport getHttpTransport() {
+        Transport transport = this.transport;
+        if (!(transport instanceof HttpClientTransport)) {
+            throw new IllegalStateException("Not supported by the transport "
+                    + transport.getClass().getName());
+        }
+        return (HttpClientTransport) transport;
+    }
+
+    /**
+     * Set the timeout of the transport to establish a connection.
+     * @param timeout in milliseconds, 0 for none.
+     * @throws IllegalStateException if the transport has no such timeout.
+     */
+    public void setConnectTimeout(int timeout) {
+        Transport transport = this.transport;
+        if (transport instanceof UrlConnectionTransport) {
+            ((UrlConnectionTransport) transport).setConnectTimeout(timeout);
+        }
+        else {
+            getHttpTransport().setConnectTimeout(timeout);
+        }
+    }
+
+    /**
+     * Set the timeout of the transport waiting for data of a
+     * response (SO_TIMEOUT).
+     * @param timeout in milliseconds, 0 for none.
+     * @throws IllegalStateException if the transport has no such timeout.
+     */
+    public void setSocketTimeout(int timeout) {
+        Transport transport = this.transport;
+        if (transport instanceof UrlConnectionTransport) {
+            ((UrlConnectionTransport) transport).setReadTimeout(timeout);
+        }
+        else {
+            getHttpTransport().setSocketTimeout(timeout);
+        }
+    }
+
+    /**
+     * Set the timeout of the HTTP client transport waiting for a
+     * connection of the pool.
+     * @param timeout in milliseconds, 0 for none.
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public void setPoolTimeout(long timeout) {
+        getHttpTransport().setPoolTimeout(timeout);
+    }
+
+    /**
+     * Set the time a pooled connection may be idle before it is closed.
+     * 
+     * A background thread closes idle connections and connections
+     * whose keep alive expired, before the server closes them.
+     * 
+     * @param maxIdleTime in milliseconds.
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        getHttpTransport().setMaxIdleTime(maxIdleTime);
+    }
+
+    /**
+     * Open read connections to the server ahead of the first requests.
+     * 
+     * The DNS lookup, TCP and TLS handshakes are done now instead
+     * of delaying the first calls. Failures are not reported, the
+     * requests will report them.
+     * 
+     * @param connections number of connections to open.
+     * @return number of connections opened.
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public int warmUp(int connections) {
+        URI uri;
+        try {
+            uri = new URI(baseUrl);
+        } catch (URISyntaxException e) {
+            return 0;
+        }
+        return getHttpTransport().warmUp(Lane.READ, uri, connections);
+    }
+
+    /**
+     * Set the timeout of every API call.
+     * 
+     * The timeout covers all attempts of a call, requests in
+     * flight when it expires are aborted. If the current thread
+     * has an earlier deadline, that is used instead.
+     * 
+     * @param timeout in milliseconds, 0 for none.
+     * @see Deadline
+     */
+    public void setCallTimeout(long timeout) {
+        this.callTimeout = timeout;
+    }
+
+    /**
+     * Enable the HTTP response cache, responses are stored in memory.
+     * 
+     * Cached responses are revalidated with the server by
+     * ETag/Last-Modified, unchanged resources are then answered
+     * with 304 Not Modified instead of the full response.
+     * 
+     * @param maxEntries maximum number of cached responses.
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public void enableCache(int maxEntries) {
+        getHttpTransport().enableCache(maxEntries);
+    }
+
+    /**
+     * Enable the HTTP response cache, response bodies are stored on disk.
+     * @param directory to store the response bodies in.
+     * @param maxEntries maximum number of cached responses.
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public void enableCache(File directory, int maxEntries) {
+        getHttpTransport().enableCache(directory, maxEntries);
+    }
+
+    /**
+     * Disable the HTTP response cache and free the cached responses.
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public void disableCache() {
+        getHttpTransport().disableCache();
+    }
+
+    /**
+     * Number of requests answered by the response cache.
+     * 
+     * This includes responses revalidated with the server.
+     * 
+     * @return number of hits, 0 if the cache is disabled
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public long getCacheHits() {
+        return getHttpTransport().getCacheHits();
+    }
+
+    /**
+     * Number of requests the response cache could not answer.
+     * @return number of misses, 0 if the cache is disabled
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public long getCacheMisses() {
+        return getHttpTransport().getCacheMisses();
+    }
+
+    /**
+     * Number of cached responses updated after revalidation.
+     * @return number of updates, 0 if the cache is disabled
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public long getCacheUpdates() {
+        return getHttpTransport().getCacheUpdates();
+    }
+
+    /**
+     * Set the maximum number of pooled connections of the read lane.
+     * @param max
+     */
+    public void setMaxConnections(int max) {
+        setMaxConnections(Lane.READ, max);
+    }
+
+    /**
+     * Set the maximum number of pooled connections of a lane.
+     * 
+     * Each lane has its own pool, requests over the limit wait for
+     * a connection of their lane only. The concurrency limit of
+     * the lane is bound to the same maximum. Other transports
+     * are bounded by the concurrency limiter of the lane alone.
+     * 
+     * @param lane
+     * @param max
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public void setMaxConnections(Lane lane, int max) {
+        getHttpTransport().setMaxConnections(lane, max);
+        getConcurrencyLimiter(lane).setMaxLimit(max);
+    }
+
+    /**
+     * Set the maximum number of pooled connections to the same host.
+     * 
+     * All requests go to the same host, this is the same as
+     * setMaxConnections(int).
+     * 
+     * @param max
+     */
+    public void setMaxConnectionsPerRoute(int max) {
+        setMaxConnections(Lane.READ, max);
+    }
+
+    /**
+     * The maximum number of pooled connections of a lane.
+     * @param lane
+     * @return max connections
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public int getMaxConnections(Lane lane) {
+        return getHttpTransport().getMaxConnections(lane);
+    }
+
+    /**
+     * Replace the codec used to decode the json responses.
+     * 
+     * Items decoded by the codec should be resolved against the
+     * base URL of this instance.
+     * 
+     * @param codec thread safe codec instance.
+     */
+    public void setCodec(JsonCodec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * The codec used to decode the json responses.
+     * @return codec instance
+     */
+    public JsonCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Replace the policy that decides if failed requests are retried.
+     * @param retryPolicy or RetryPolicy.disabled()
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * The policy that decides if failed requests are retried.
+     * @return policy instance
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Enable hedging of GET requests, a slow request is sent twice.
+     * @param hedgePolicy or null to disable hedging.
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * The policy that decides when GET requests are hedged.
+     * @return policy instance, null if hedging is disabled
+     */
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * The rate limiter every request takes a permit of.
+     * 
+     * Use setRate to limit the reads, mutations or uploads.
+     * 
+     * @return rate limiter
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * The adaptive concurrency limiter of a lane.
+     * @param lane
+     * @return limiter with the current limit
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter(Lane lane) {
+        return concurrencyLimiters.get(lane);
+    }
+
+    /**
+     * The circuit breaker of an endpoint family.
+     * 
+     * Allows to observe its state and to register a state listener.
+     * 
+     * @param endpoint family
+     * @return circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(Endpoint endpoint) {
+        synchronized (circuitBreakers) {
+            return circuitBreakers.get(endpoint);
+        }
+    }
+
+    /**
+     * Replace the circuit breaker of an endpoint family, to change its thresholds.
+     * 
+     * Every family starts with the breaker of
+     * {@link CircuitBreaker#forEndpoint(Endpoint)}.
+     * 
+     * @param endpoint family
+     * @param circuitBreaker
+     */
+    public void setCircuitBreaker(Endpoint endpoint, CircuitBreaker circuitBreaker) {
+        synchronized (circuitBreakers) {
+            circuitBreakers.put(endpoint, circuitBreaker);
+        }
+    }
+
+    /**
+     * Replace the circuit breaker of an endpoint family with new thresholds.
+     * @param endpoint family
+     * @param failureRate of the calls in the window that opens the circuit.
+     * @param slowCallRate of the calls in the window that opens the circuit.
+     * @param slowCallDuration in milliseconds a call is considered slow after,
+     *        CircuitBreaker.SLOW_CALL_DISABLED to ignore the duration of calls.
+     * @param windowSize number of recent calls recorded.
+     * @param minimumCalls recorded before the rates are evaluated.
+     * @param openDuration in milliseconds the circuit stays open.
+     * @param halfOpenCalls number of trial calls before closing again.
+     */
+    public void setCircuitBreaker(Endpoint endpoint, double failureRate, double slowCallRate,
+            long slowCallDuration, int windowSize, int minimumCalls, long openDuration,
+            int halfOpenCalls) {
+        setCircuitBreaker(endpoint, new CircuitBreaker(endpoint.name(), failureRate,
+                slowCallRate, slowCallDuration, windowSize, minimumCalls, openDuration,
+                halfOpenCalls));
+    }
+
+    /**
+     * Set the maximum size in bytes of a response, larger ones are aborted.
+     * @param maxResponseSize
+     */
+    public void setMaxResponseSize(long maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    /**
+     * Number of GET calls that shared the request of a concurrent
+     * call for the same URL instead of sending their own.
+     * @return number of collapsed calls
+     */
+    public long getCollapsedRequests() {
+        return singleFlight.getCollapsed();
+    }
+
+    /**
+     * Returns the number of leased, available and pending connections
+     * of the read lane.
+     * @return pool stats snapshot
+     */
+    public PoolStats getPoolStats() {
+        return getPoolStats(Lane.READ);
+    }
+
+    /**
+     * Returns the number of leased, available and pending connections
+     * of a lane.
+     * @param lane
+     * @return pool stats snapshot
+     * @throws IllegalStateException if the transport is no HttpClientTransport.
+     */
+    public PoolStats getPoolStats(Lane lane) {
+        return getHttpTransport().getPoolStats(lane);
+    }
+
+    /**
+     * Executor for background work of this instance. (package protected)
+     * @return executor with daemon threads
+     */
+    synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new DaemonThreadFactory("zeitgeist-worker"));
+        }
+        return executor;
+    }
+
+    /**
+     * Scheduler shared by all instances.
+     * 
+     * Its daemon thread ends after SCHEDULER_KEEP_ALIVE seconds
+     * without aborts to run, instances dropped without shutdown
+     * leave no thread behind.
+     * 
+     * @return scheduler with a daemon thread
+     */
+    private static synchronized ScheduledThreadPoolExecutor getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("zeitgeist-deadline"));
+            scheduler.setKeepAliveTime(SCHEDULER_KEEP_ALIVE, TimeUnit.SECONDS);
+            scheduler.allowCoreThreadTimeOut(true);
+        }
+        return scheduler;
+    }
+
+    /**
+     * Closes all pooled connections, the instance can't be used afterwards.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        rateLimiter.shutdown();
+        Transport transport = this.transport;
+        transport.shutdown();
+        if (transport != httpTransport) {
+            httpTransport.shutdown();
+        }
+    }
+
     /**
      * Upload image as a new item.
      * @param file
@@ -209,11 +786,12 @@ public class ZeitgeistApi {
             boolean announce, OnProgressListener listener) 
             throws ZeitgeistError {
         MultipartEntity entity;
-        if (listener == null) {
+        CancellationToken token = CancellationToken.current();
+        if (listener == null && token == null) {
             entity = new MultipartEntity();
         }
         else {
-            entity = new MultipartEntityWithProgress(listener);
+            entity = new MultipartEntityWithProgress(listener, token);
         }
         
         for (File file : files) {
@@ -227,16 +805,9 @@ public class ZeitgeistApi {
             throw new ZeitgeistError("UnsupportedEncoding: " + e.getMessage());
         }
         
-        Map<String, ?> jsonObject = postRequest("/new", entity);
+        Response response = postRequest("/new", entity);
 
-        ArrayList<Map<String, ?>> itemObjects = (ArrayList<Map<String, ?>>)jsonObject.get("items");
-
-        List<Item> items = new Vector<Item>();
-        for (Map<String, ?> itemObject : itemObjects) {
-            items.add(new Item(itemObject, baseUrl));
-        }
-
-        return items;
+        return response.getItems();
     }
 
     public interface OnProgressListener {
@@ -245,40 +816,58 @@ public class ZeitgeistApi {
     
     // based on this idea: 
     //  http://toolongdidntread.com/android/android-multipart-post-with-progress-bar/
+    // the upload stops mid-stream once the cancellation token is cancelled
     private class MultipartEntityWithProgress extends MultipartEntity {
         private OnProgressListener listener;
+        private CancellationToken token;
         
-        public MultipartEntityWithProgress(OnProgressListener listener) {
+        public MultipartEntityWithProgress(OnProgressListener listener,
+                CancellationToken token) {
             this.listener = listener;
+            this.token = token;
         }
 
         @Override
         public void writeTo(final OutputStream out) throws IOException {
-            super.writeTo(new CountingOutputStream(out, this.listener));
+            super.writeTo(new CountingOutputStream(out, this.listener, this.token));
         }
 
         private class CountingOutputStream extends FilterOutputStream {
 
             private final OnProgressListener listener;
+            private final CancellationToken token;
             private long transferred;
 
             public CountingOutputStream(final OutputStream out,
-                    final OnProgressListener listener) {
+                    final OnProgressListener listener, final CancellationToken token) {
                 super(out);
                 this.listener = listener;
+                this.token = token;
                 this.transferred = 0;
             }
 
             public void write(byte[] b, int off, int len) throws IOException {
+                checkCancelled();
                 out.write(b, off, len);
                 this.transferred += len;
-                this.listener.onProgress(this.transferred);
+                if (this.listener != null) {
+                    this.listener.onProgress(this.transferred);
+                }
             }
 
             public void write(int b) throws IOException {
+                checkCancelled();
                 out.write(b);
                 this.transferred++;
-                this.listener.onProgress(this.transferred);
+                if (this.listener != null) {
+                    this.listener.onProgress(this.transferred);
+                }
+            }
+
+            private void checkCancelled() throws IOException {
+                if (this.token != null && this.token.isCancelled()) {
+                    throw new InterruptedIOException("Upload cancelled");
+                }
             }
         }
     }
@@ -386,31 +975,118 @@ public class ZeitgeistApi {
 
         postData.add(new BasicNameValuePair("announce", announce ? "true" : "false"));
         
-        Map<String, ?> jsonObject = postRequest("/new", createEntityByNameValueList(postData));
+        Response response = postRequest("/new", createEntityByNameValueList(postData));
+
+        return response.getItems();
+    }
 
-        ArrayList<Map<String, ?>> itemObjects = (ArrayList<Map<String, ?>>)jsonObject.get("items");
+    /**
+     * Query for a single item instance by ID.
+     * @param id
+     * @return the item instance
+     * @throws ZeitgeistError
+     */
+    public Item item(int id)
+      throws ZeitgeistError {
+        Response response = getRequest("/" + String.valueOf(id));
+
+        return response.getItem();
+    }
+
+    /**
+     * Query for multiple items by ID with concurrent requests.
+     * 
+     * Runs as many requests at once as the adaptive concurrency
+     * limit of the read lane allows.
+     * 
+     * @param ids
+     * @return outcome per ID in the order of the IDs.
+     * @throws ZeitgeistError if interrupted.
+     */
+    public List<ItemResult> itemsByIds(Collection<Integer> ids)
+      throws ZeitgeistError {
+        return itemsByIds(ids, getConcurrencyLimiter(Lane.READ).getMaxLimit());
+    }
+
+    /**
+     * Query for multiple items by ID with concurrent requests.
+     * 
+     * Items that could not be requested are returned as failed
+     * outcomes with the error, they don't abort the other requests.
+     * The deadline and cancellation token of the current thread
+     * apply to all requests.
+     * 
+     * @param ids
+     * @param concurrency maximum number of concurrent requests.
+     * @return outcome per ID in the order of the IDs.
+     * @throws ZeitgeistError if interrupted.
+     */
+    public List<ItemResult> itemsByIds(Collection<Integer> ids, int concurrency)
+      throws ZeitgeistError {
+        final Integer[] idArray = ids.toArray(new Integer[0]);
+        final ItemResult[] results = new ItemResult[idArray.length];
+        final AtomicInteger next = new AtomicInteger();
+        final Deadline deadline = Deadline.current();
+        final CancellationToken token = CancellationToken.current();
+
+        Runnable worker = new Runnable() {
+            public void run() {
+                Deadline previous = Deadline.set(deadline);
+                CancellationToken previousToken = CancellationToken.set(token);
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < idArray.length) {
+                        int id = idArray[i];
+                        try {
+                            results[i] = new ItemResult(id, item(id));
+                        } catch (ZeitgeistError e) {
+                            results[i] = new ItemResult(id, e);
+                        }
+                    }
+                } finally {
+                    Deadline.set(previous);
+                    CancellationToken.set(previousToken);
+                }
+            }
+        };
 
-        List<Item> items = new Vector<Item>();
-        for (Map<String, ?> itemObject : itemObjects) {
-            items.add(new Item(itemObject, baseUrl));
+        int workerCount = Math.min(Math.max(concurrency, 1), idArray.length);
+        List<Future<?>> workers = new ArrayList<Future<?>>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(getExecutor().submit(worker));
+        }
+        try {
+            for (Future<?> future : workers) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : workers) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new ZeitgeistError("InterruptedException: " + e.getMessage());
+        } catch (ExecutionException e) {
+            throw new ZeitgeistError("ExecutionException: " + e.getCause());
         }
 
-        return items;
+        return Arrays.asList(results);
     }
 
     /**
-     * Query for a single item instance by ID.
-     * @param id
-     * @return the item instance
-     * @throws ZeitgeistError
+     * Query for multiple items with the fewest requests.
+     * 
+     * Dense ranges of IDs are swept with list pages, sparse IDs
+     * are queried by concurrent single item requests. Items not
+     * found in the pages are queried by single requests as well.
+     * 
+     * @param ids
+     * @return outcome per ID and the number of requests saved.
+     * @throws ZeitgeistError if interrupted.
      */
-    public Item item(int id)
+    public FetchResult fetchItems(Collection<Integer> ids)
       throws ZeitgeistError {
-        Map<String, ?> jsonObject = getRequest("/" + String.valueOf(id));
-
-        Item item = new Item((Map<String, ?>)jsonObject.get("item"), baseUrl);
-
-        return item;
+        return new FetchPlanner(this, DEFAULT_PAGE_SIZE,
+                getConcurrencyLimiter(Lane.READ).getMaxLimit()).fetch(ids);
     }
 
     /**
@@ -454,21 +1130,71 @@ public class ZeitgeistApi {
      */
     public List<Item> list(int before, int after)
       throws ZeitgeistError {
+        Response response = getRequest(listQuery(before, after), false);
+
+        return response.getItems();
+    }
+
+    /**
+     * Lists the newest/frontpage items into the columns of a page.
+     * @return page of items.
+     * @throws ZeitgeistError
+     */
+    public ItemPage listPage()
+      throws ZeitgeistError {
+        return listPage(-1, -1);
+    }
+
+    /**
+     * Lists items that come before or after specified IDs into the columns of a page.
+     * 
+     * The items are decoded without constructing item objects,
+     * useful to scan many items by their IDs, upvotes, sizes or
+     * timestamps.
+     * 
+     * @param before ID (optional -1)
+     * @param after ID (optional -1)
+     * @return page of items.
+     * @throws ZeitgeistError
+     */
+    public ItemPage listPage(int before, int after)
+      throws ZeitgeistError {
+        Response response = getRequest(listQuery(before, after), true);
+
+        return response.getPage();
+    }
+
+    /**
+     * Returns the query that lists items before or after IDs.
+     * @param before ID (optional -1)
+     * @param after ID (optional -1)
+     * @return URI from url base.
+     */
+    private static String listQuery(int before, int after) {
         StringBuilder query = new StringBuilder().append("/");
         if (before >= 0 || after >= 0) {
             query.append("?");
             if (before >= 0) query.append("before=" + String.valueOf(before));
             if (after >= 0) query.append("after=" + String.valueOf(after));
         }
-        Map<String, ?> jsonObject = getRequest(query.toString());
-        ArrayList<Map<String, ?>> itemObjects = (ArrayList<Map<String, ?>>)jsonObject.get("items");
-        
-        List<Item> items = new Vector<Item>();
-        for (Map<String, ?> itemObject : itemObjects) {
-            items.add(new Item(itemObject, baseUrl));
-        }
+        return query.toString();
+    }
 
-        return items;
+    /**
+     * Iterates over all items, newest first, page by page.
+     * @return pager without prefetching
+     */
+    public ItemPager listAll() {
+        return listAll(false);
+    }
+
+    /**
+     * Iterates over all items, newest first, page by page.
+     * @param prefetch True if the next page should be requested in the background.
+     * @return pager instance
+     */
+    public ItemPager listAll(boolean prefetch) {
+        return new ItemPager(this, null, prefetch);
     }
 
     /**
@@ -481,15 +1207,9 @@ public class ZeitgeistApi {
             throws ZeitgeistError {
         List<NameValuePair> postData = new ArrayList<NameValuePair>();
         postData.add(new BasicNameValuePair("q", query));
-        Map<String, ?> jsonObject = postRequest("/search", createEntityByNameValueList(postData));
-        ArrayList<Map<String, ?>> tagObjects = (ArrayList<Map<String, ?>>)jsonObject.get("tags");
-
-        List<Tag> tags = new Vector<Tag>();
-        for (Map<String, ?> tagObject : tagObjects) {
-            tags.add(new Tag(tagObject));
-        }
+        Response response = postRequest("/search", createEntityByNameValueList(postData));
 
-        return tags;
+        return response.getTags();
     }
 
     /**
@@ -537,6 +1257,46 @@ public class ZeitgeistApi {
      */
     public List<Item> listByTag(String tag, int before, int after)
             throws ZeitgeistError {
+        Response response = getRequest(listByTagQuery(tag, before, after), false);
+
+        return response.getItems();
+    }
+
+    /**
+     * List newest items that are associated with given tag into the columns of a page.
+     * @param tag
+     * @return page of items.
+     * @throws ZeitgeistError
+     */
+    public ItemPage listByTagPage(String tag)
+            throws ZeitgeistError {
+        return listByTagPage(tag, -1, -1);
+    }
+
+    /**
+     * List items that are associated with given tag into the columns of a page.
+     * @param tag
+     * @param before ID (optional -1)
+     * @param after ID (optional -1)
+     * @return page of items.
+     * @throws ZeitgeistError
+     * @see #listPage(int, int)
+     */
+    public ItemPage listByTagPage(String tag, int before, int after)
+            throws ZeitgeistError {
+        Response response = getRequest(listByTagQuery(tag, before, after), true);
+
+        return response.getPage();
+    }
+
+    /**
+     * Returns the query that lists items of a tag before or after IDs.
+     * @param tag
+     * @param before ID (optional -1)
+     * @param after ID (optional -1)
+     * @return URI from url base.
+     */
+    private static String listByTagQuery(String tag, int before, int after) {
         StringBuilder query = new StringBuilder();
         try {
             query.append("/show/tag/" + URLEncoder.encode(tag, "utf-8"));
@@ -548,17 +1308,28 @@ public class ZeitgeistApi {
             if (before >= 0) query.append("before=" + String.valueOf(before));
             if (after >= 0) query.append("after=" + String.valueOf(after));
         }
-        Map<String, ?> jsonObject = getRequest(query.toString());
-        ArrayList<Map<String, ?>> itemObjects = (ArrayList<Map<String, ?>>)jsonObject.get("items");
-
-        List<Item> items = new Vector<Item>();
-        for (Map<String, ?> itemObject : itemObjects) {
-            items.add(new Item(itemObject, baseUrl));
-        }
-
-        return items;
+        return query.toString();
     }
     
+    /**
+     * Iterates over all items associated with given tag, newest first.
+     * @param tag
+     * @return pager without prefetching
+     */
+    public ItemPager listAllByTag(String tag) {
+        return listAllByTag(tag, false);
+    }
+
+    /**
+     * Iterates over all items associated with given tag, newest first.
+     * @param tag
+     * @param prefetch True if the next page should be requested in the background.
+     * @return pager instance
+     */
+    public ItemPager listAllByTag(String tag, boolean prefetch) {
+        return new ItemPager(this, tag, prefetch);
+    }
+
     /**
      * Update the tags of a item.
      * 
@@ -613,11 +1384,9 @@ public class ZeitgeistApi {
         postData.add(new BasicNameValuePair("add_tags", Utils.join(addTags, ",")));
         postData.add(new BasicNameValuePair("del_tags", Utils.join(delTags, ",")));
 
-        Map<String, ?> jsonObject = postRequest("/update", createEntityByNameValueList(postData));
+        Response response = postRequest("/update", createEntityByNameValueList(postData));
 
-        Item item = new Item((Map<String, ?>)jsonObject.get("item"), baseUrl);
-
-        return item;
+        return response.getItem();
     }
 
     /**
@@ -633,8 +1402,8 @@ public class ZeitgeistApi {
       throws ZeitgeistError {
         List<NameValuePair> postData = new ArrayList<NameValuePair>();
         postData.add(new BasicNameValuePair("id", String.valueOf(id)));
-        Map<String, ?> jsonObject = postRequest("/delete", createEntityByNameValueList(postData));
-        return ((Double)jsonObject.get("id")).intValue();
+        Response response = postRequest("/delete", createEntityByNameValueList(postData));
+        return response.getId();
     }
 
     /**
@@ -663,8 +1432,8 @@ public class ZeitgeistApi {
         List<NameValuePair> postData = new ArrayList<NameValuePair>();
         postData.add(new BasicNameValuePair("id", String.valueOf(id)));
         postData.add(new BasicNameValuePair("remove", remove ? "true" : "false"));
-        Map<String, ?> jsonObject = postRequest("/upvote", createEntityByNameValueList(postData));
-        return ((Double)jsonObject.get("upvotes")).intValue();
+        Response response = postRequest("/upvote", createEntityByNameValueList(postData));
+        return response.getUpvotes();
     }
     
     /**
@@ -676,13 +1445,13 @@ public class ZeitgeistApi {
      * @throws ZeitgeistError
      */
     public String getApiSecret() throws ZeitgeistError {
-        Map<String, ?> jsonObject = getRequest("/api_secret");
+        Response response = getRequest("/api_secret");
         
-        if (jsonObject.containsKey("user_id")) {
-            userId = ((Double)jsonObject.get("user_id")).intValue();
+        if (response.getUserId() != -1) {
+            userId = response.getUserId();
         } 
         
-        return (String) jsonObject.get("api_secret");
+        return response.getApiSecret();
     }
     
     /**
@@ -702,6 +1471,9 @@ public class ZeitgeistApi {
         catch (ZeitgeistError error) {
             return false;
         }
+        finally {
+            api.shutdown();
+        }
     }
 
     /**
@@ -723,84 +1495,551 @@ public class ZeitgeistApi {
      * Perform a POST request. 
      * @param query URI from url base.
      * @param entity
-     * @return json map of primitives.
+     * @return decoded response.
      * @throws ZeitgeistError
      */
-    private Map<String, ?> postRequest(String query, HttpEntity entity)
+    private Response postRequest(String query, HttpEntity entity)
       throws ZeitgeistError {
-        Map<String, ?> jsonObject = null;
+        Response response = null;
 
-        HttpPost request = new HttpPost(this.baseUrl + query);
+        TransportRequest request = new TransportRequest("POST", URI.create(this.baseUrl + query));
         setHeaders(request);
 
-        request.setEntity(entity);
+        request.setBody(new EntityBody(entity));
 
-        jsonObject = executeRequest(request);
+        response = executeRequest(request, Endpoint.forQuery(query), false);
 
-        return jsonObject;
+        return response;
     }
 
     /**
      * Perform a GET request. 
+     * 
+     * Concurrent calls for the same URL share one request and
+     * its decoded response.
+     * 
      * @param query URI from url base.
-     * @return json map of primitives.
+     * @return decoded response.
      * @throws ZeitgeistError
      */
-    private Map<String, ?> getRequest(String query)
+    private Response getRequest(String query)
       throws ZeitgeistError {
-        Map<String, ?> jsonObject = null;
+        return getRequest(query, false);
+    }
 
-        HttpGet request = new HttpGet(this.baseUrl + query);
-        setHeaders(request);
-        jsonObject = executeRequest(request);
+    /**
+     * Perform a GET request. 
+     * 
+     * Concurrent calls for the same URL and decoding share one
+     * request and its decoded response.
+     * 
+     * @param query URI from url base.
+     * @param page True if listed items are decoded into an item page.
+     * @return decoded response.
+     * @throws ZeitgeistError
+     */
+    private Response getRequest(final String query, final boolean page)
+      throws ZeitgeistError {
+        Response response = null;
+
+        final String url = this.baseUrl + query;
+        response = singleFlight.execute(page ? "page:" + url : url, new SingleFlight.Task() {
+            public Response execute() throws ZeitgeistError {
+                TransportRequest request = new TransportRequest("GET", URI.create(url));
+                setHeaders(request);
+                return executeRequest(request, Endpoint.forQuery(query), page);
+            }
+        });
 
-        return jsonObject;
+        return response;
     }
 
     /**
      * Execute a HTTP request and parse the result as JSON, also unifies
      * Exceptions into the ZeitgeistError class.
+     * 
+     * Failed requests are retried as the retry policy allows, each
+     * attempt is rejected if the circuit breaker of the endpoint
+     * family is open. The request is sent with the connection pool
+     * of the endpoint lane. All attempts must complete before the
+     * deadline of the call, a request in flight is aborted when it
+     * expires or the cancellation token of the thread is cancelled.
+     * 
      * @param request
-     * @return json map of primitives.
+     * @param endpoint family of the request.
+     * @param page True if listed items are decoded into an item page.
+     * @return decoded response.
      * @throws ZeitgeistError
      */
-    private Map<String, ?> executeRequest(HttpRequestBase request) 
+    private Response executeRequest(TransportRequest request, Endpoint endpoint, boolean page)
       throws ZeitgeistError {
-        Map<String, ?> jsonObject = null;
+        RetryPolicy retryPolicy = this.retryPolicy;
+        CircuitBreaker circuitBreaker = getCircuitBreaker(endpoint);
+        ConcurrencyLimiter concurrencyLimiter = getConcurrencyLimiter(endpoint.getLane());
+        Deadline deadline = getCallDeadline();
+        CancellationToken token = CancellationToken.current();
+        retryPolicy.onRequest();
+
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            checkCancelled(token);
+            checkDeadline(deadline);
+            try {
+                if (deadline == null) {
+                    rateLimiter.acquire(endpoint.getLane());
+                }
+                else if (!rateLimiter.tryAcquire(endpoint.getLane(),
+                        deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)) {
+                    throw new DeadlineExceededError();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ZeitgeistError("InterruptedException: " + e.getMessage());
+            }
+            Transport transport = this.transport;
+            boolean retryStatus = retryPolicy.isIdempotent(request) &&
+                retryPolicy.hasAttemptsLeft(attempt);
+            Future<?> abort = null;
+            try {
+                abort = scheduleAbort(request, deadline);
+                if (token != null) {
+                    token.register(request);
+                }
+                return executeAttempt(transport, endpoint, request, page,
+                        retryStatus, deadline, token,
+                        circuitBreaker, concurrencyLimiter);
+            } catch (ClientProtocolException e) {
+                checkCancelled(token);
+                checkDeadline(deadline);
+                if (!retryPolicy.shouldRetry(request, e, attempt)) {
+                    throw new ZeitgeistError("ClientProtocolException: " + e.getMessage());
+                }
+            } catch (IOException e) {
+                checkCancelled(token); // aborted by the token
+                checkDeadline(deadline); // aborted at the deadline
+                if (!retryPolicy.shouldRetry(request, e, attempt)) {
+                    throw new ZeitgeistError("IOException: " + e.getMessage());
+                }
+            } finally {
+                cancelAbort(abort);
+                if (token != null) {
+                    token.unregister(request);
+                }
+            }
+
+            long delay = retryPolicy.getDelay(attempt);
+            if (deadline != null && deadline.remaining(TimeUnit.MILLISECONDS) <= delay) {
+                throw new DeadlineExceededError(); // no time left for another attempt
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ZeitgeistError("InterruptedException: " + e.getMessage());
+            }
+            request = request.copy(); // a failed request may be aborted
+        }
+    }
+
+    /**
+     * Execute a single attempt of a HTTP request and parse the result.
+     * 
+     * GET requests are hedged if a hedge policy is set.
+     * 
+     * @param transport the request is sent with.
+     * @param endpoint family of the request.
+     * @param request
+     * @param page True if listed items are decoded into an item page.
+     * @param retryStatus True if a 502, 503 or 504 response should be retried.
+     * @param deadline of the call, or null.
+     * @param token of the call, or null.
+     * @param circuitBreaker acquired for the attempt, the outcome is recorded with.
+     * @param concurrencyLimiter acquired for the attempt, released with the outcome.
+     * @return decoded response.
+     * @throws ZeitgeistError
+     * @throws IOException
+     */
+    private Response executeAttempt(Transport transport, Endpoint endpoint,
+            TransportRequest request, boolean page, boolean retryStatus, Deadline deadline,
+            CancellationToken token,
+            CircuitBreaker circuitBreaker, ConcurrencyLimiter concurrencyLimiter)
+            throws ZeitgeistError, IOException {
+        HedgePolicy hedgePolicy = this.hedgePolicy;
+        Lane lane = endpoint.getLane();
+        acquirePermits(circuitBreaker, concurrencyLimiter, deadline); // released below
+        long start = System.nanoTime();
+        boolean failure = true; // unless the server answered
+        try {
+            Response response;
+            if (hedgePolicy != null && request.getMethod().equals("GET")) {
+                response = executeHedged(transport, lane, request, page, retryStatus,
+                        hedgePolicy, deadline, token, concurrencyLimiter);
+            }
+            else {
+                response = executeExchange(transport, lane, request, page, retryStatus);
+            }
+
+            int statusCode = response.getStatusCode();
+            failure = statusCode >= 500;
+            if (statusCode != 200) { // decoded error into an ZeitgeistException and throw
+                throw createError(response);
+            }
+
+            return response;
+        } catch (HttpStatusError e) {
+            failure = e.getStatusCode() >= 500; // error page instead of json
+            throw e;
+        } catch (ParseError e) {
+            failure = false; // the server answered, the content is not retried
+            throw e;
+        } finally {
+            long duration = System.nanoTime() - start;
+            if (token != null && token.isCancelled()) { // no outcome of the server
+                circuitBreaker.release();
+                concurrencyLimiter.release();
+            }
+            else {
+                circuitBreaker.record(failure, duration);
+                concurrencyLimiter.release(endpoint, duration, failure);
+            }
+        }
+    }
+
+    /**
+     * Acquire a permit of the concurrency limiter and the circuit
+     * breaker, either both are acquired or none.
+     * @param circuitBreaker
+     * @param concurrencyLimiter
+     * @param deadline of the call, or null.
+     * @throws ZeitgeistError
+     */
+    private void acquirePermits(CircuitBreaker circuitBreaker,
+            ConcurrencyLimiter concurrencyLimiter, Deadline deadline) throws ZeitgeistError {
+        try {
+            if (deadline == null) {
+                concurrencyLimiter.acquire();
+            }
+            else if (!concurrencyLimiter.tryAcquire(
+                    deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)) {
+                throw new DeadlineExceededError();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ZeitgeistError("InterruptedException: " + e.getMessage());
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            concurrencyLimiter.release();
+            throw new CircuitOpenError(circuitBreaker.getName());
+        }
+    }
+
+    /**
+     * Send the request and parse the response of any status.
+     * 
+     * The content of an error status that is no valid response
+     * is reported with the status code.
+     * 
+     * @param transport
+     * @param lane
+     * @param request
+     * @param page True if listed items are decoded into an item page.
+     * @param retryStatus True if a 502, 503 or 504 response should be retried.
+     * @return decoded response with status code.
+     * @throws ZeitgeistError
+     * @throws IOException
+     */
+    private Response executeExchange(Transport transport, Lane lane, TransportRequest request,
+            boolean page, boolean retryStatus) throws ZeitgeistError, IOException {
+        TransportResponse transportResponse = transport.execute(request, lane);
+
+        int statusCode = transportResponse.getStatusCode();
+        if (retryStatus && retryPolicy.isRetryableStatus(statusCode)) {
+            request.abort();
+            throw new HttpResponseException(statusCode, transportResponse.getReasonPhrase());
+        }
+
+        Response response;
+        try {
+            response = parseJson(request, transportResponse, page);
+        } catch (ZeitgeistError e) {
+            if (statusCode == 200) {
+                throw e;
+            }
+            throw new HttpStatusError(statusCode, e.getMessage());
+        }
+        response.setStatusCode(statusCode);
+
+        return response;
+    }
+
+    /**
+     * Send a GET request and a second copy if the first is not answered in time.
+     * 
+     * The first response wins, the other request is aborted. If
+     * the first one to complete failed, the other is waited for.
+     * Both requests are aborted if the deadline expires or the
+     * token is cancelled.
+     * 
+     * The second request takes its own permits of the rate limiter
+     * and the concurrency limiter, it is not sent if none is free
+     * at the hedge delay. Latencies are recorded from the start of
+     * the first request, as the caller waited.
+     * 
+     * @param transport
+     * @param lane
+     * @param request
+     * @param page True if listed items are decoded into an item page.
+     * @param retryStatus True if a 502, 503 or 504 response should be retried.
+     * @param hedgePolicy
+     * @param deadline of the call, or null.
+     * @param token of the call, or null.
+     * @param concurrencyLimiter the second request takes a permit of.
+     * @return decoded response with status code.
+     * @throws ZeitgeistError
+     * @throws IOException
+     */
+    private Response executeHedged(Transport transport, Lane lane, TransportRequest request,
+            boolean page, boolean retryStatus, HedgePolicy hedgePolicy, Deadline deadline,
+            CancellationToken token, ConcurrencyLimiter concurrencyLimiter)
+            throws ZeitgeistError, IOException {
+        final TransportRequest[] requests = { request, request.copy() };
+        CompletionService<Response> completion =
+            new ExecutorCompletionService<Response>(getExecutor());
+        Map<Future<Response>, Integer> futures = new HashMap<Future<Response>, Integer>();
+        long start = System.nanoTime();
+        boolean hedged = false; // holds a concurrency permit
 
         try {
-            HttpResponse response = this.client.execute(request);
-            String jsonString = EntityUtils.toString(response.getEntity());
-            jsonObject = parseJson(jsonString);
-
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode != 200) { // parse json into an ZeitgeistException and throw
-                ZeitgeistError error = null;
-                if (((String)jsonObject.get("type")).equals("CreateItemError")) {
-                    error = new CreateItemError(jsonObject, baseUrl);
+            futures.put(completion.submit(exchange(transport, lane, requests[0],
+                    page, retryStatus, hedgePolicy, start)), 0);
+
+            long delay = hedgePolicy.getDelay();
+            Future<Response> done;
+            if (delay < 0 || (deadline != null &&
+                    deadline.remaining(TimeUnit.NANOSECONDS) <= delay)) {
+                done = take(completion, deadline);
+            }
+            else {
+                done = completion.poll(delay, TimeUnit.NANOSECONDS);
+            }
+            if (done == null) {
+                hedged = tryAcquireHedge(lane, concurrencyLimiter);
+                if (hedged) {
+                    hedgePolicy.onHedgeFired();
+                    if (token != null) {
+                        token.register(requests[1]);
+                    }
+                    futures.put(completion.submit(exchange(transport, lane, requests[1],
+                            page, retryStatus, hedgePolicy, start)), 1);
                 }
                 else {
-                    error = new ZeitgeistError(jsonObject);
+                    hedgePolicy.onHedgeSkipped();
                 }
+                done = take(completion, deadline);
+            }
 
-                throw error;
+            while (true) {
+                int index = futures.remove(done);
+                try {
+                    Response response = done.get();
+                    if (index == 1) {
+                        hedgePolicy.onHedgeWon();
+                    }
+                    return response;
+                } catch (ExecutionException e) {
+                    if (futures.isEmpty()) { // no other request left
+                        Throwable cause = e.getCause();
+                        if (cause instanceof IOException) {
+                            throw (IOException) cause;
+                        }
+                        if (cause instanceof ZeitgeistError) {
+                            throw (ZeitgeistError) cause;
+                        }
+                        throw new ZeitgeistError("ExecutionException: " + cause);
+                    }
+                }
+                done = take(completion, deadline);
             }
-        } catch (ClientProtocolException e) {
-            throw new ZeitgeistError("ClientProtocolException: " + e.getMessage());
-        } catch (IOException e) {
-            throw new ZeitgeistError("IOException: " + e.getMessage());
-        } catch (ZeitgeistError e) {
-            throw e; // just passthrough
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ZeitgeistError("InterruptedException: " + e.getMessage());
+        } finally {
+            for (Map.Entry<Future<Response>, Integer> loser : futures.entrySet()) {
+                requests[loser.getValue()].abort();
+                loser.getKey().cancel(true);
+            }
+            if (token != null) {
+                token.unregister(requests[1]);
+            }
+            if (hedged) {
+                concurrencyLimiter.release(); // the outcome is recorded by the attempt
+            }
+        }
+    }
+
+    /**
+     * Take the permits of a hedge request without waiting.
+     * @param lane
+     * @param concurrencyLimiter
+     * @return true if both permits were taken.
+     * @throws InterruptedException
+     */
+    private boolean tryAcquireHedge(Lane lane, ConcurrencyLimiter concurrencyLimiter)
+            throws InterruptedException {
+        if (!concurrencyLimiter.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            return false;
+        }
+        if (!rateLimiter.tryAcquire(lane, 0, TimeUnit.NANOSECONDS)) {
+            concurrencyLimiter.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the next completed request until the deadline.
+     * @param completion
+     * @param deadline or null to wait without limit.
+     * @return completed request
+     * @throws DeadlineExceededError
+     * @throws InterruptedException
+     */
+    private static Future<Response> take(CompletionService<Response> completion,
+            Deadline deadline) throws DeadlineExceededError, InterruptedException {
+        if (deadline == null) {
+            return completion.take();
+        }
+        Future<Response> done = completion.poll(deadline.remaining(TimeUnit.NANOSECONDS),
+                TimeUnit.NANOSECONDS);
+        if (done == null) {
+            throw new DeadlineExceededError();
         }
+        return done;
+    }
+
+    /**
+     * Returns the deadline of a call starting now.
+     * 
+     * The earlier of the call timeout and the deadline of the
+     * current thread.
+     * 
+     * @return deadline or null if the call has none.
+     */
+    private Deadline getCallDeadline() {
+        Deadline deadline = Deadline.current();
+        long callTimeout = this.callTimeout;
+        if (callTimeout > 0) {
+            deadline = Deadline.after(callTimeout, TimeUnit.MILLISECONDS).min(deadline);
+        }
+        return deadline;
+    }
+
+    /**
+     * Throws if the token was cancelled.
+     * @param token or null.
+     * @throws CancelledError
+     */
+    private static void checkCancelled(CancellationToken token) throws CancelledError {
+        if (token != null) {
+            token.checkCancelled();
+        }
+    }
+
+    /**
+     * Throws if the deadline has expired.
+     * @param deadline or null.
+     * @throws DeadlineExceededError
+     */
+    private static void checkDeadline(Deadline deadline) throws DeadlineExceededError {
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededError();
+        }
+    }
+
+    /**
+     * Schedule the abort of the request at the deadline.
+     * @param request
+     * @param deadline or null.
+     * @return scheduled abort, null without deadline.
+     */
+    private Future<?> scheduleAbort(final TransportRequest request, Deadline deadline) {
+        if (deadline == null) {
+            return null;
+        }
+        return getScheduler().schedule(new Runnable() {
+            public void run() {
+                request.abort();
+            }
+        }, deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancel a scheduled abort and remove it from the scheduler queue.
+     * @param abort or null.
+     */
+    private void cancelAbort(Future<?> abort) {
+        if (abort != null) {
+            abort.cancel(false);
+            getScheduler().remove((Runnable) abort);
+        }
+    }
+
+    /**
+     * Returns a task that executes the request and records its latency.
+     * @param transport
+     * @param lane
+     * @param request
+     * @param page
+     * @param retryStatus
+     * @param hedgePolicy
+     * @param start of the hedged call in nanoseconds.
+     * @return task instance
+     */
+    private Callable<Response> exchange(final Transport transport, final Lane lane,
+            final TransportRequest request, final boolean page, final boolean retryStatus,
+            final HedgePolicy hedgePolicy, final long start) {
+        return new Callable<Response>() {
+            public Response call() throws ZeitgeistError, IOException {
+                Response response = executeExchange(transport, lane, request,
+                        page, retryStatus);
+                hedgePolicy.recordLatency(System.nanoTime() - start);
+                return response;
+            }
+        };
+    }
 
-        return jsonObject;
+    /**
+     * Creates the exception of the error type by decoded error response.
+     * @param response
+     * @return error
+     */
+    private ZeitgeistError createError(Response response) {
+        ZeitgeistError innerError = null;
+        if (response.getError() != null) {
+            innerError = createError(response.getError());
+        }
+        if ("CreateItemError".equals(response.getType())) {
+            List<Item> items = response.getItems();
+            if (items == null) {
+                items = new ArrayList<Item>();
+            }
+            return new CreateItemError(response.getType(), response.getMessage(), innerError, items);
+        }
+        else if ("DuplicateError".equals(response.getType())) {
+            return new DuplicateError(response.getType(), response.getMessage(), response.getId());
+        }
+        else if ("RemoteError".equals(response.getType())) {
+            return new RemoteError(response.getType(), response.getMessage(), innerError, response.getUrl());
+        }
+        return new ZeitgeistError(response.getType(), response.getMessage());
     }
 
     /**
      * Set required Headers for the API, json accept only and authentication.
      * @param request
      */
-    private void setHeaders(HttpRequestBase request) {
+    private void setHeaders(TransportRequest request) {
         request.setHeader("Accept", "application/json");
         if (this.email != null && this.apiSecret != null &&
             this.email.length() > 0 && this.apiSecret.length() > 0) {
@@ -809,23 +2048,87 @@ public class ZeitgeistApi {
     }
 
     /**
-     * Parses json by string, returns a map of primitives by string key.
-     * @param jsonString
-     * @return json "primitive" map
+     * Decodes the json response from the response content.
+     * 
+     * The content is decoded while it is read from the connection,
+     * the request is aborted if the response exceeds the maximum
+     * response size. Listed items of page requests are decoded
+     * into an item page.
+     * 
+     * @param request that is aborted on failure.
+     * @param response of the request.
+     * @param page True if listed items are decoded into an item page.
+     * @return decoded response.
      * @throws ZeitgeistError
+     * @throws IOException
      */
-    private Map<String, ?> parseJson(String jsonString)
-      throws ZeitgeistError {
-        Map<String, ?> json = null;
+    private Response parseJson(TransportRequest request, TransportResponse response,
+            boolean page) throws ZeitgeistError, IOException {
+        if (response.getContent() == null) {
+            throw new ZeitgeistError("Empty response");
+        }
+        if (response.getContentLength() > maxResponseSize) {
+            request.abort();
+            throw new ZeitgeistError("Response exceeds " + maxResponseSize + " bytes");
+        }
+        String charset = response.getCharset();
+        if (charset == null) {
+            charset = "UTF-8";
+        }
+
+        Response json = null;
+        LimitedInputStream content = new LimitedInputStream(response.getContent(), maxResponseSize);
+        boolean success = false;
         try {
-            json = new Gson().fromJson(jsonString, Map.class);
-        } catch (JsonParseException e) {
-            throw new ZeitgeistError("JsonParseException: " + e.getMessage());
+            json = decode(new InputStreamReader(content, charset), page);
+            response.close(); // releases the connection
+            success = json != null;
+        } catch (IOException e) {
+            if (content.isExceeded()) {
+                throw new ZeitgeistError("Response exceeds " + maxResponseSize + " bytes");
+            }
+            throw e;
+        } finally {
+            if (!success) {
+                request.abort(); // don't reuse a connection with unread content
+            }
+        }
+        if (json == null) {
+            throw new ZeitgeistError("Empty response");
         }
 
         return json;
     }
 
+    /**
+     * Decodes the response content with the codec.
+     * 
+     * Codecs other than the gson codec decode the items, the page
+     * is constructed of them.
+     * 
+     * @param reader of the response content.
+     * @param page True if listed items are decoded into an item page.
+     * @return decoded response.
+     * @throws ZeitgeistError
+     * @throws IOException
+     */
+    private Response decode(Reader reader, boolean page)
+      throws ZeitgeistError, IOException {
+        JsonCodec codec = this.codec;
+        if (!page) {
+            return codec.decode(reader);
+        }
+        if (codec instanceof GsonCodec) {
+            return ((GsonCodec) codec).decodePage(reader);
+        }
+        Response response = codec.decode(reader);
+        if (response != null && response.getItems() != null) {
+            response.setPage(ItemPage.of(response.getItems(), baseUrl));
+            response.setItems(null);
+        }
+        return response;
+    }
+
     /**
      * The Base URL used by this API instance.
      * @return string URL
@@ -0,0 +1,48 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api.error;
+
+/**
+ * Thrown without a request if the circuit breaker of an endpoint is open.
+ * 
+ * The endpoint failed too often recently, requests fail fast
+ * until the server had time to recover.
+ */
+public class CircuitOpenError extends ZeitgeistError {
+    /**
+     * Name of the endpoint family that is unavailable.
+     */
+    private String endpoint;
+
+    /**
+     * Construct by the name of the endpoint family.
+     * @param endpoint
+     */
+    public CircuitOpenError(String endpoint) {
+        super("CircuitOpenError", "Circuit breaker of " + endpoint + " is open");
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Name of the endpoint family that is unavailable.
+     * @return endpoint name
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+}
@@ -50,6 +50,19 @@ public class CreateItemError extends ZeitgeistError {
         super(message);
     }
 
+    /**
+     * Construct by decoded error.
+     * @param type
+     * @param message
+     * @param error the error that stopped the creation.
+     * @param items created up to this point.
+     */
+    public CreateItemError(String type, String message, ZeitgeistError error, List<Item> items) {
+        super(type, message);
+        this.error = error;
+        this.items = items;
+    }
+
     /**
      * Construct by json primitive map.
      * @param jsonObject
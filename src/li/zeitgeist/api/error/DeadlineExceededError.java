@@ -0,0 +1,34 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api.error;
+
+/**
+ * Thrown if the deadline of a call expired before it completed.
+ * 
+ * Requests still in flight when the deadline expired are aborted,
+ * the call is not retried.
+ */
+public class DeadlineExceededError extends ZeitgeistError {
+
+    /**
+     * Construct the error.
+     */
+    public DeadlineExceededError() {
+        super("DeadlineExceededError", "Deadline exceeded");
+    }
+}
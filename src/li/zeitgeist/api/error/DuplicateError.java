@@ -39,6 +39,17 @@ public class DuplicateError extends ZeitgeistError {
         super(message);
     }
 
+    /**
+     * Construct by decoded error.
+     * @param type
+     * @param message
+     * @param id of the existing item.
+     */
+    public DuplicateError(String type, String message, int id) {
+        super(type, message);
+        this.id = id;
+    }
+
     /**
      * Construct by remote json primitive map.
      * @param jsonObject
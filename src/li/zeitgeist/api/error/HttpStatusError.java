@@ -0,0 +1,49 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api.error;
+
+/**
+ * Thrown if an error response could not be decoded as json.
+ * 
+ * For instance the HTML error page of a proxy in front of the
+ * server. The status code tells if the server failed.
+ */
+public class HttpStatusError extends ZeitgeistError {
+    /**
+     * HTTP status code of the response.
+     */
+    private int statusCode;
+
+    /**
+     * Construct by status code and the reason the content was not decoded.
+     * @param statusCode
+     * @param message describing why the response could not be decoded.
+     */
+    public HttpStatusError(int statusCode, String message) {
+        super("HttpStatusError", "HTTP " + statusCode + ": " + message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * HTTP status code of the response.
+     * @return status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
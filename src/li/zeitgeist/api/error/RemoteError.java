@@ -45,6 +45,19 @@ public class RemoteError extends ZeitgeistError {
         super(message);
     }
 
+    /**
+     * Construct by decoded error.
+     * @param type
+     * @param message
+     * @param error the internal error that occured.
+     * @param url of the remote upload.
+     */
+    public RemoteError(String type, String message, ZeitgeistError error, String url) {
+        super(type, message);
+        this.error = error;
+        this.url = url;
+    }
+
     /**
      * Construct by json primitive map.
      * @param jsonObject
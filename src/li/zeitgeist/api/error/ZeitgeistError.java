@@ -44,6 +44,17 @@ public class ZeitgeistError extends Exception {
         this.message = message;
     }
 
+    /**
+     * Construct a error by type and message.
+     * @param type
+     * @param message
+     */
+    public ZeitgeistError(String type, String message) {
+        super(message);
+        this.type = type;
+        this.message = message;
+    }
+
     /**
      * Construct a error by json that the server returned.
      * @param jsonObject
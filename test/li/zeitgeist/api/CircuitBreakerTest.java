@@ -0,0 +1,221 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import li.zeitgeist.api.CircuitBreaker.State;
+
+import org.junit.Test;
+
+/**
+ * Tests the state transitions of the circuit breaker.
+ */
+public class CircuitBreakerTest {
+    private static final long FAST = 1000000L; // 1 ms
+    private static final long SLOW = 2000000000L; // 2 s
+
+    /**
+     * Breaker with a window of 10 calls, evaluated after 4 calls,
+     * slow after 1 second, two trial calls.
+     * @param openDuration in milliseconds.
+     * @return breaker instance
+     */
+    private static CircuitBreaker breaker(long openDuration) {
+        return new CircuitBreaker("test", 0.5, 0.8, 1000, 10, 4, openDuration, 2);
+    }
+
+    /**
+     * Acquires a permit and records the outcome.
+     * @param breaker
+     * @param failure
+     * @param duration in nanoseconds.
+     */
+    private static void call(CircuitBreaker breaker, boolean failure, long duration) {
+        assertTrue(breaker.tryAcquire());
+        breaker.record(failure, duration);
+    }
+
+    /**
+     * Opens the breaker by failed calls.
+     * @param breaker
+     */
+    private static void open(CircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+        }
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = breaker(60000);
+        for (int i = 0; i < 3; i++) {
+            call(breaker, true, FAST);
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void staysClosedBelowFailureRate() {
+        CircuitBreaker breaker = breaker(60000);
+        for (int i = 0; i < 10; i++) {
+            call(breaker, i >= 6, FAST); // 4 of 10 failed
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensAtFailureRate() {
+        CircuitBreaker breaker = breaker(60000);
+        call(breaker, false, FAST);
+        call(breaker, true, FAST);
+        call(breaker, false, FAST);
+        assertEquals(State.CLOSED, breaker.getState());
+        call(breaker, true, FAST); // 2 of 4 failed
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void opensAtSlowCallRate() {
+        CircuitBreaker breaker = breaker(60000);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false, SLOW);
+        }
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void oldCallsLeaveTheWindow() {
+        CircuitBreaker breaker = breaker(60000);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, i < 1, FAST);
+        }
+        for (int i = 0; i < 10; i++) {
+            call(breaker, false, FAST); // pushes the failure out
+        }
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, FAST);
+        }
+        assertEquals(State.CLOSED, breaker.getState()); // 4 of 10 failed
+    }
+
+    @Test
+    public void rejectsWhileOpen() {
+        CircuitBreaker breaker = breaker(60000);
+        open(breaker);
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2, breaker.getRejected());
+    }
+
+    @Test
+    public void halfOpenAfterOpenDuration() throws Exception {
+        CircuitBreaker breaker = breaker(20);
+        open(breaker);
+        Thread.sleep(40);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire()); // only the trial calls
+    }
+
+    @Test
+    public void closesAfterSuccessfulTrials() throws Exception {
+        CircuitBreaker breaker = breaker(20);
+        open(breaker);
+        Thread.sleep(40);
+        call(breaker, false, FAST);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        call(breaker, false, FAST);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        for (int i = 0; i < 3; i++) {
+            call(breaker, true, FAST); // the window starts empty again
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void reopensOnFailedTrial() throws Exception {
+        CircuitBreaker breaker = breaker(20);
+        open(breaker);
+        Thread.sleep(40);
+        call(breaker, true, FAST);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void reopensOnSlowTrial() throws Exception {
+        CircuitBreaker breaker = breaker(20);
+        open(breaker);
+        Thread.sleep(40);
+        call(breaker, false, SLOW);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void releasedTrialCanBeRetaken() throws Exception {
+        CircuitBreaker breaker = breaker(20);
+        open(breaker);
+        Thread.sleep(40);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.release(); // cancelled without outcome
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void listenerIsNotifiedOfTransitions() throws Exception {
+        final List<String> transitions = new ArrayList<String>();
+        CircuitBreaker breaker = breaker(20);
+        breaker.setOnStateChangeListener(new CircuitBreaker.OnStateChangeListener() {
+            public void onStateChange(CircuitBreaker breaker, State from, State to) {
+                transitions.add(from + ">" + to);
+            }
+        });
+        open(breaker);
+        Thread.sleep(40);
+        call(breaker, false, FAST);
+        call(breaker, false, FAST);
+        assertEquals("[CLOSED>OPEN, OPEN>HALF_OPEN, HALF_OPEN>CLOSED]", transitions.toString());
+    }
+
+    @Test
+    public void uploadsIgnoreSlowCalls() {
+        CircuitBreaker breaker = CircuitBreaker.forEndpoint(Endpoint.CREATE);
+        for (int i = 0; i < CircuitBreaker.DEFAULT_WINDOW_SIZE; i++) {
+            call(breaker, false, 600 * 1000000000L);
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void readsOpenOnSlowCalls() {
+        CircuitBreaker breaker = CircuitBreaker.forEndpoint(Endpoint.READ);
+        for (int i = 0; i < CircuitBreaker.DEFAULT_MINIMUM_CALLS; i++) {
+            call(breaker, false, CircuitBreaker.DEFAULT_SLOW_CALL_DURATION * 1000000L);
+        }
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals("READ", breaker.getName());
+    }
+}
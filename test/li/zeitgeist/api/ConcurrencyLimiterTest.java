@@ -0,0 +1,177 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the additive increase and multiplicative decrease of the
+ * concurrency limit and the per endpoint latency baseline.
+ */
+public class ConcurrencyLimiterTest {
+    private static final long MILLIS = 1000000L;
+
+    /**
+     * Acquires the limit and releases all requests with the outcome.
+     * @param limiter
+     * @param endpoint
+     * @param latency in nanoseconds.
+     * @param failure
+     */
+    private static void round(ConcurrencyLimiter limiter, Endpoint endpoint,
+            long latency, boolean failure) throws InterruptedException {
+        int count = limiter.getLimit();
+        for (int i = 0; i < count; i++) {
+            limiter.acquire();
+        }
+        for (int i = 0; i < count; i++) {
+            limiter.release(endpoint, latency, failure);
+        }
+    }
+
+    /**
+     * Acquires and releases a single request.
+     * @param limiter
+     * @param endpoint
+     * @param latency in nanoseconds.
+     * @param failure
+     */
+    private static void call(ConcurrencyLimiter limiter, Endpoint endpoint,
+            long latency, boolean failure) throws InterruptedException {
+        limiter.acquire();
+        limiter.release(endpoint, latency, failure);
+    }
+
+    @Test
+    public void initialLimitIsBounded() {
+        assertEquals(4, new ConcurrencyLimiter(4, 1, 8).getLimit());
+        assertEquals(8, new ConcurrencyLimiter(16, 1, 8).getLimit());
+        assertEquals(2, new ConcurrencyLimiter(0, 2, 8).getLimit());
+    }
+
+    @Test
+    public void growsAdditivelyWhileSaturated() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 100);
+        round(limiter, Endpoint.READ, 10 * MILLIS, false);
+        assertEquals(4, limiter.getLimit()); // grows by 1 / limit per request
+        for (int i = 0; i < 3; i++) {
+            round(limiter, Endpoint.READ, 10 * MILLIS, false);
+        }
+        assertTrue(limiter.getLimit() > 4);
+        assertTrue(limiter.getLimit() <= 8); // no more than one per round
+    }
+
+    @Test
+    public void doesNotGrowIfUnused() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            call(limiter, Endpoint.READ, 10 * MILLIS, false); // one in flight of four
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void growthStopsAtMaximum() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 5);
+        for (int i = 0; i < 50; i++) {
+            round(limiter, Endpoint.READ, 10 * MILLIS, false);
+        }
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void failureCutsMultiplicatively() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 1, 100);
+        call(limiter, Endpoint.READ, 10 * MILLIS, true);
+        assertEquals(18, limiter.getLimit()); // 20 * 0.9
+        call(limiter, Endpoint.READ, 10 * MILLIS, true);
+        assertEquals(16, limiter.getLimit()); // 16.2
+    }
+
+    @Test
+    public void cutStopsAtMinimum() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 2, 100);
+        for (int i = 0; i < 50; i++) {
+            call(limiter, Endpoint.READ, 10 * MILLIS, true);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void latencyAboveBaselineCuts() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 1, 100);
+        for (int i = 0; i < 10; i++) {
+            call(limiter, Endpoint.READ, 10 * MILLIS, false);
+        }
+        assertEquals(20, limiter.getLimit());
+        call(limiter, Endpoint.READ, 100 * MILLIS, false);
+        assertEquals(18, limiter.getLimit());
+    }
+
+    @Test
+    public void singleOutlierIsSmoothed() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 1, 100);
+        for (int i = 0; i < 10; i++) {
+            call(limiter, Endpoint.READ, 10 * MILLIS, false);
+        }
+        call(limiter, Endpoint.READ, 25 * MILLIS, false); // above twice the baseline once
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    public void baselineIsKeptPerEndpoint() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 1, 100);
+        for (int i = 0; i < 50; i++) {
+            call(limiter, Endpoint.READ, 10 * MILLIS, false);
+            call(limiter, Endpoint.UPDATE, 80 * MILLIS, false); // slower, not congested
+        }
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    public void releaseWithoutOutcomeKeepsLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 100);
+        limiter.acquire();
+        assertEquals(1, limiter.getInFlight());
+        limiter.release();
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void requestsOverTheLimitWait() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 100);
+        assertTrue(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+        assertTrue(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+        assertFalse(limiter.tryAcquire(20, TimeUnit.MILLISECONDS));
+        limiter.release();
+        assertTrue(limiter.tryAcquire(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void loweredMaximumCapsLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(16, 1, 100);
+        limiter.setMaxLimit(8);
+        assertEquals(8, limiter.getLimit());
+        assertEquals(8, limiter.getMaxLimit());
+    }
+}
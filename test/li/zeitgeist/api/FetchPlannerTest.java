@@ -0,0 +1,168 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests how the fetch planner splits IDs into swept runs and single
+ * requests, answered by an in-memory transport.
+ */
+public class FetchPlannerTest {
+    private ZeitgeistApi api;
+    private InMemoryTransport transport;
+
+    @Before
+    public void setUp() {
+        api = new ZeitgeistApi("http://localhost", "", "");
+        transport = new InMemoryTransport();
+        api.setTransport(transport);
+    }
+
+    @After
+    public void tearDown() {
+        api.shutdown();
+    }
+
+    /**
+     * Json of a minimal item.
+     * @param id
+     * @return item object
+     */
+    private static String item(int id) {
+        return "{\"id\":" + id + ",\"type\":\"image\",\"tags\":[],\"users_upvoted\":[]}";
+    }
+
+    /**
+     * Answers the list page before the ID with the items from high down to low.
+     * @param before
+     * @param high
+     * @param low
+     */
+    private void setPage(int before, int high, int low) {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        for (int id = high; id >= low; id--) {
+            json.append(item(id));
+            if (id > low) json.append(',');
+        }
+        transport.setResponse("/?before=" + before, 200, json.append("]}").toString());
+    }
+
+    /**
+     * Answers the single item request of the ID.
+     * @param id
+     */
+    private void setItem(int id) {
+        transport.setResponse("/" + id, 200, "{\"item\":" + item(id) + "}");
+    }
+
+    @Test
+    public void denseRunIsSweptWithOnePage() throws Exception {
+        setPage(101, 100, 81);
+        List<Integer> ids = Arrays.asList(100, 98, 97, 95, 94, 93, 92, 91);
+
+        FetchResult result = new FetchPlanner(api, 20, 4).fetch(ids);
+
+        assertEquals(1, result.getPageRequests());
+        assertEquals(0, result.getItemRequests());
+        assertEquals(7, result.getRequestsSaved());
+        assertEquals(1, transport.getRequests());
+        for (int i = 0; i < ids.size(); i++) {
+            ItemResult itemResult = result.getResults().get(i);
+            assertTrue(itemResult.isSuccess());
+            assertEquals(ids.get(i).intValue(), itemResult.getItem().getId());
+        }
+    }
+
+    @Test
+    public void sparseIdsAreRequestedSingly() throws Exception {
+        setItem(500);
+        setItem(300);
+        setItem(100);
+
+        FetchResult result = new FetchPlanner(api, 20, 4).fetch(Arrays.asList(100, 300, 500));
+
+        assertEquals(0, result.getPageRequests());
+        assertEquals(3, result.getItemRequests());
+        assertEquals(0, result.getRequestsSaved());
+        for (ItemResult itemResult : result.getResults()) {
+            assertTrue(itemResult.isSuccess());
+        }
+    }
+
+    @Test
+    public void runsAreSplitAtGaps() throws Exception {
+        setPage(101, 100, 81);
+        setPage(51, 50, 31);
+        setItem(5);
+        List<Integer> ids = Arrays.asList(100, 99, 98, 97, 50, 49, 48, 47, 5);
+
+        FetchResult result = new FetchPlanner(api, 20, 4).fetch(ids);
+
+        assertEquals(2, result.getPageRequests()); // one per dense run
+        assertEquals(1, result.getItemRequests()); // the sparse ID
+        assertEquals(9 - 3, result.getRequestsSaved());
+        for (ItemResult itemResult : result.getResults()) {
+            assertTrue(itemResult.isSuccess());
+        }
+    }
+
+    @Test
+    public void itemsMissingFromPagesAreRequestedSingly() throws Exception {
+        transport.setResponse("/?before=101", 200, "{\"items\":[" +
+                item(100) + "," + item(99) + "," + item(97) + "," + item(96) + "]}");
+        setItem(98);
+        List<Integer> ids = Arrays.asList(100, 99, 98, 97, 96);
+
+        FetchResult result = new FetchPlanner(api, 20, 4).fetch(ids);
+
+        assertEquals(1, result.getPageRequests());
+        assertEquals(1, result.getItemRequests());
+        assertTrue(result.getResults().get(2).isSuccess());
+        assertEquals(98, result.getResults().get(2).getItem().getId());
+    }
+
+    @Test
+    public void failedItemsAreReported() throws Exception {
+        FetchResult result = new FetchPlanner(api, 20, 4).fetch(Arrays.asList(404));
+
+        assertEquals(1, result.getItemRequests());
+        ItemResult itemResult = result.getResults().get(0);
+        assertFalse(itemResult.isSuccess());
+        assertNotNull(itemResult.getError());
+        assertEquals(404, itemResult.getId());
+    }
+
+    @Test
+    public void duplicateIdsAreFetchedOnce() throws Exception {
+        setItem(42);
+
+        FetchResult result = new FetchPlanner(api, 20, 4).fetch(Arrays.asList(42, 42));
+
+        assertEquals(1, result.getItemRequests());
+        assertEquals(2, result.getResults().size());
+        assertTrue(result.getResults().get(1).isSuccess());
+    }
+}
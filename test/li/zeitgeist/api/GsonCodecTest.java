@@ -0,0 +1,108 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Tests encoding responses and decoding them again.
+ */
+public class GsonCodecTest {
+    private static final String ITEMS = "{\"items\":[{\"id\":42,\"type\":\"image\","
+        + "\"image\":{\"image\":\"/a.png\",\"thumbnail\":\"/t.png\"},"
+        + "\"source\":\"http://example.com/a.png\",\"title\":\"A\","
+        + "\"created_at\":\"2012-02-25T07:36:12+01:00\",\"nsfw\":true,\"size\":1234,"
+        + "\"mimetype\":\"image/png\",\"checksum\":\"abc\",\"dimensions\":\"640x480\","
+        + "\"upvote_count\":2,\"dm_user_id\":5,"
+        + "\"tags\":[{\"id\":7,\"tagname\":\"cat\",\"count\":3}],\"users_upvoted\":[5,9]},"
+        + "{\"id\":43,\"type\":\"video\"}]}";
+
+    private static String encode(GsonCodec codec, Response response) throws Exception {
+        StringWriter writer = new StringWriter();
+        codec.encode(response, writer);
+        return writer.toString();
+    }
+
+    private static void assertSameItem(Item expected, Item actual) {
+        assertEquals(expected, actual);
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getImage().getImage(), actual.getImage().getImage());
+        assertEquals(expected.getImage().getThumbnail(), actual.getImage().getThumbnail());
+        assertEquals(expected.getSource(), actual.getSource());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getCreated(), actual.getCreated());
+        assertEquals(expected.isNsfw(), actual.isNsfw());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.getMimetype(), actual.getMimetype());
+        assertEquals(expected.getChecksum(), actual.getChecksum());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getUpvotes(), actual.getUpvotes());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertSame(expected.getTag(0), actual.getTag(0));
+        assertArrayEquals(expected.getUsersUpvotedIds(), actual.getUsersUpvotedIds());
+    }
+
+    @Test
+    public void itemsRoundTrip() throws Exception {
+        GsonCodec codec = new GsonCodec("http://zeitgeist.li");
+        Response response = codec.decode(new StringReader(ITEMS));
+        Response decoded = codec.decode(new StringReader(encode(codec, response)));
+
+        assertEquals(2, decoded.getItems().size());
+        assertSameItem(response.getItems().get(0), decoded.getItems().get(0));
+        Item second = decoded.getItems().get(1);
+        assertEquals(Item.Type.VIDEO, second.getType());
+        assertNull(second.getImage());
+        assertNull(second.getCreated());
+        assertNull(second.getDimensions());
+    }
+
+    @Test
+    public void pageIsEncodedAsItems() throws Exception {
+        GsonCodec codec = new GsonCodec("http://zeitgeist.li");
+        Response response = codec.decodePage(new StringReader(ITEMS));
+        Response decoded = codec.decode(new StringReader(encode(codec, response)));
+
+        assertEquals(2, decoded.getItems().size());
+        assertSameItem(response.getPage().getItem(0), decoded.getItems().get(0));
+    }
+
+    @Test
+    public void errorRoundTrip() throws Exception {
+        GsonCodec codec = new GsonCodec("http://zeitgeist.li");
+        Response response = codec.decode(new StringReader("{\"type\":\"RemoteError\","
+                + "\"message\":\"failed\",\"url\":\"http://example.com\","
+                + "\"error\":{\"type\":\"DuplicateError\",\"message\":\"dup\",\"id\":42}}"));
+        String json = encode(codec, response);
+        Response decoded = codec.decode(new StringReader(json));
+
+        assertEquals("RemoteError", decoded.getType());
+        assertEquals("failed", decoded.getMessage());
+        assertEquals("http://example.com", decoded.getUrl());
+        assertEquals(-1, decoded.getId());
+        assertEquals("DuplicateError", decoded.getError().getType());
+        assertEquals(42, decoded.getError().getId());
+        assertFalse(json.contains("\"upvotes\""));
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that hedge requests take their own permits.
+ */
+public class HedgePolicyTest {
+    private ZeitgeistApi api;
+    private HedgePolicy hedgePolicy;
+
+    /**
+     * Answers the first request after a delay, all others at once.
+     */
+    private static class SlowFirstTransport extends InMemoryTransport {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public TransportResponse execute(TransportRequest request, Lane lane)
+          throws IOException {
+            if (calls.getAndIncrement() == 0) {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted");
+                }
+            }
+            return super.execute(request, lane);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        api = new ZeitgeistApi("http://localhost", "", "");
+        SlowFirstTransport transport = new SlowFirstTransport();
+        transport.setResponse("/", 200, "{\"items\":[]}");
+        api.setTransport(transport);
+        hedgePolicy = HedgePolicy.fixedDelay(20);
+        api.setHedgePolicy(hedgePolicy);
+    }
+
+    @After
+    public void tearDown() {
+        api.shutdown();
+    }
+
+    @Test
+    public void hedgeIsSentWithFreePermits() throws Exception {
+        api.list();
+        assertEquals(1, hedgePolicy.getHedgesFired());
+        assertEquals(1, hedgePolicy.getHedgesWon());
+        assertEquals(0, hedgePolicy.getHedgesSkipped());
+        assertEquals(0, api.getConcurrencyLimiter(Lane.READ).getInFlight());
+    }
+
+    @Test
+    public void hedgeIsSkippedWithoutConcurrencyPermit() throws Exception {
+        api.getConcurrencyLimiter(Lane.READ).setMaxLimit(1);
+        api.list();
+        assertEquals(0, hedgePolicy.getHedgesFired());
+        assertEquals(1, hedgePolicy.getHedgesSkipped());
+        assertEquals(0, api.getConcurrencyLimiter(Lane.READ).getInFlight());
+    }
+
+    @Test
+    public void hedgeIsSkippedWithoutRatePermit() throws Exception {
+        api.getRateLimiter().setRate(Lane.READ, 0.1, 1);
+        api.list();
+        assertEquals(0, hedgePolicy.getHedgesFired());
+        assertEquals(1, hedgePolicy.getHedgesSkipped());
+    }
+}
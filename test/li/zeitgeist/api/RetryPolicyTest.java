@@ -0,0 +1,247 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.UnknownHostException;
+
+import li.zeitgeist.api.error.CircuitOpenError;
+import li.zeitgeist.api.error.HttpStatusError;
+import li.zeitgeist.api.error.ZeitgeistError;
+
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.junit.Test;
+
+/**
+ * Tests which requests the retry policy retries and its retry budget.
+ */
+public class RetryPolicyTest {
+    private static final IOException RESET = new IOException("Connection reset");
+
+    /**
+     * Policy with plenty attempts and budget.
+     * @return policy instance
+     */
+    private static RetryPolicy policy() {
+        return new RetryPolicy(5, 0, 0, 1.0, 100);
+    }
+
+    /**
+     * Request to the path of localhost.
+     * @param method
+     * @param path
+     * @param sent True to mark the request as sent.
+     * @return request instance
+     */
+    private static TransportRequest request(String method, String path, boolean sent) {
+        TransportRequest request = new TransportRequest(method, URI.create("http://localhost" + path));
+        if (sent) {
+            request.markSent();
+        }
+        return request;
+    }
+
+    @Test
+    public void onlyGetAndHeadAreIdempotent() {
+        RetryPolicy policy = policy();
+        assertTrue(policy.isIdempotent(request("GET", "/", false)));
+        assertTrue(policy.isIdempotent(request("HEAD", "/", false)));
+        assertFalse(policy.isIdempotent(request("POST", "/upvote", false)));
+    }
+
+    @Test
+    public void idempotentRequestsAreRetriedAfterSending() {
+        assertTrue(policy().shouldRetry(request("GET", "/", true), RESET, 1));
+    }
+
+    @Test
+    public void sentMutationsAreNotRetried() {
+        RetryPolicy policy = policy();
+        assertFalse(policy.shouldRetry(request("POST", "/upvote", true), RESET, 1));
+        // never reached the server
+        assertTrue(policy.shouldRetry(request("POST", "/upvote", false), RESET, 1));
+    }
+
+    @Test
+    public void unsentMutationWithStreamedEntityIsNotRetried() throws Exception {
+        RetryPolicy policy = policy();
+        TransportRequest repeatable = request("POST", "/new", false);
+        repeatable.setBody(new EntityBody(new StringEntity("body")));
+        assertTrue(policy.shouldRetry(repeatable, RESET, 1));
+
+        TransportRequest streamed = request("POST", "/new", false);
+        streamed.setBody(new EntityBody(
+                new InputStreamEntity(new ByteArrayInputStream(new byte[1]), 1)));
+        assertFalse(policy.shouldRetry(streamed, RESET, 1));
+    }
+
+    @Test
+    public void permanentErrorsAreNotRetried() {
+        assertFalse(policy().shouldRetry(request("GET", "/", false),
+                new UnknownHostException("localhost"), 1));
+    }
+
+    @Test
+    public void attemptsAreLimited() {
+        RetryPolicy policy = new RetryPolicy(3, 0, 0, 1.0, 100);
+        TransportRequest get = request("GET", "/", true);
+        assertTrue(policy.hasAttemptsLeft(2));
+        assertFalse(policy.hasAttemptsLeft(3));
+        assertTrue(policy.shouldRetry(get, RESET, 2));
+        assertFalse(policy.shouldRetry(get, RESET, 3));
+    }
+
+    @Test
+    public void budgetLimitsRetries() {
+        RetryPolicy policy = new RetryPolicy(100, 0, 0, 0.5, 2);
+        TransportRequest get = request("GET", "/", true);
+        assertTrue(policy.shouldRetry(get, RESET, 1));
+        assertTrue(policy.shouldRetry(get, RESET, 1));
+        assertFalse(policy.shouldRetry(get, RESET, 1)); // budget spent
+        assertEquals(2, policy.getRetries());
+
+        policy.onRequest();
+        assertFalse(policy.shouldRetry(get, RESET, 1)); // half a retry earned
+        policy.onRequest();
+        assertTrue(policy.shouldRetry(get, RESET, 1));
+        assertEquals(3, policy.getRetries());
+    }
+
+    @Test
+    public void budgetIsBounded() {
+        RetryPolicy policy = new RetryPolicy(100, 0, 0, 1.0, 2);
+        for (int i = 0; i < 10; i++) {
+            policy.onRequest();
+        }
+        TransportRequest get = request("GET", "/", true);
+        assertTrue(policy.shouldRetry(get, RESET, 1));
+        assertTrue(policy.shouldRetry(get, RESET, 1));
+        assertFalse(policy.shouldRetry(get, RESET, 1));
+    }
+
+    @Test
+    public void disabledNeverRetries() {
+        assertFalse(RetryPolicy.disabled().shouldRetry(request("GET", "/", false), RESET, 1));
+    }
+
+    @Test
+    public void delayIsBoundedByMaximum() {
+        RetryPolicy policy = new RetryPolicy(100, 100, 1000, 1.0, 100);
+        for (int attempt = 1; attempt < 40; attempt++) {
+            long delay = policy.getDelay(attempt);
+            assertTrue(delay >= 0 && delay <= 1000);
+        }
+    }
+
+    @Test
+    public void retryableStatusOfIdempotentCallIsRetried() throws Exception {
+        ZeitgeistApi api = new ZeitgeistApi("http://localhost", "", "");
+        try {
+            InMemoryTransport transport = new InMemoryTransport();
+            api.setTransport(transport);
+            api.setRetryPolicy(new RetryPolicy(3, 0, 0, 1.0, 100));
+            transport.setResponse("/", 503,
+                    "{\"type\":\"ServiceUnavailable\",\"message\":\"overloaded\"}");
+            try {
+                api.list();
+                fail("expected a ZeitgeistError");
+            } catch (ZeitgeistError e) {
+                // all attempts answered with 503
+            }
+            assertEquals(3, transport.getRequests());
+        } finally {
+            api.shutdown();
+        }
+    }
+
+    @Test
+    public void mutationIsNotRetried() throws Exception {
+        ZeitgeistApi api = new ZeitgeistApi("http://localhost", "", "");
+        try {
+            InMemoryTransport transport = new InMemoryTransport();
+            api.setTransport(transport);
+            api.setRetryPolicy(new RetryPolicy(3, 0, 0, 1.0, 100));
+            transport.setResponse("/upvote", 503,
+                    "{\"type\":\"ServiceUnavailable\",\"message\":\"overloaded\"}");
+            try {
+                api.upvote(1);
+                fail("expected a ZeitgeistError");
+            } catch (ZeitgeistError e) {
+                // not retried
+            }
+            assertEquals(1, transport.getRequests());
+        } finally {
+            api.shutdown();
+        }
+    }
+
+    @Test
+    public void errorPageCountsAsFailure() throws Exception {
+        ZeitgeistApi api = new ZeitgeistApi("http://localhost", "", "");
+        try {
+            InMemoryTransport transport = new InMemoryTransport();
+            api.setTransport(transport);
+            api.setRetryPolicy(new RetryPolicy(1, 0, 0, 1.0, 100));
+            api.setCircuitBreaker(Endpoint.READ, new CircuitBreaker("READ", 0.5, 1.0,
+                    CircuitBreaker.SLOW_CALL_DISABLED, 4, 2, 60000, 1));
+            transport.setResponse("/", 502, "<html><body>Bad Gateway</body></html>");
+            for (int i = 0; i < 2; i++) {
+                try {
+                    api.list();
+                    fail("expected a HttpStatusError");
+                } catch (HttpStatusError e) {
+                    assertEquals(502, e.getStatusCode());
+                }
+            }
+            try {
+                api.list();
+                fail("expected a CircuitOpenError");
+            } catch (CircuitOpenError e) {
+                // both error pages were recorded as failures
+            }
+            assertEquals(2, transport.getRequests());
+        } finally {
+            api.shutdown();
+        }
+    }
+
+    @Test
+    public void truncatedContentIsRetried() throws Exception {
+        ZeitgeistApi api = new ZeitgeistApi("http://localhost", "", "");
+        try {
+            InMemoryTransport transport = new InMemoryTransport();
+            api.setTransport(transport);
+            api.setRetryPolicy(new RetryPolicy(3, 0, 0, 1.0, 100));
+            transport.setResponse("/", 200, "{\"items\":[{\"id\":1,");
+            try {
+                api.list();
+                fail("expected a ZeitgeistError");
+            } catch (ZeitgeistError e) {
+                assertTrue(e.getMessage().startsWith("IOException"));
+            }
+            assertEquals(3, transport.getRequests());
+        } finally {
+            api.shutdown();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import li.zeitgeist.api.error.CancelledError;
+import li.zeitgeist.api.error.DeadlineExceededError;
+import li.zeitgeist.api.error.ZeitgeistError;
+
+import org.junit.Test;
+
+/**
+ * Tests coalescing of concurrent calls and how waiting callers
+ * handle a cancelled or expired leader.
+ */
+public class SingleFlightTest {
+    private final SingleFlight flight = new SingleFlight();
+    /**
+     * Opened to let the executing task complete.
+     */
+    private final CountDownLatch proceed = new CountDownLatch(1);
+    /**
+     * Number of task executions.
+     */
+    private final AtomicInteger executions = new AtomicInteger();
+
+    /**
+     * Task that waits until proceed is opened, then fails with the
+     * error on its first execution and returns a response afterwards.
+     * @param firstError or null to always succeed.
+     * @return task instance
+     */
+    private SingleFlight.Task task(final ZeitgeistError firstError) {
+        return new SingleFlight.Task() {
+            public Response execute() throws ZeitgeistError {
+                int execution = executions.incrementAndGet();
+                try {
+                    if (execution == 1 && !proceed.await(10, TimeUnit.SECONDS)) {
+                        throw new ZeitgeistError("test timed out");
+                    }
+                } catch (InterruptedException e) {
+                    throw new ZeitgeistError("InterruptedException");
+                }
+                if (execution == 1 && firstError != null) {
+                    throw firstError;
+                }
+                Response response = new Response();
+                response.setStatusCode(200);
+                response.setId(execution);
+                return response;
+            }
+        };
+    }
+
+    /**
+     * Calls the single flight from its own thread.
+     */
+    private class Caller extends Thread {
+        private final SingleFlight.Task task;
+        private final Deadline deadline;
+        private final CancellationToken token;
+        private volatile Response response;
+        private volatile ZeitgeistError error;
+
+        Caller(SingleFlight.Task task, Deadline deadline, CancellationToken token) {
+            this.task = task;
+            this.deadline = deadline;
+            this.token = token;
+            start();
+        }
+
+        public void run() {
+            Deadline.set(deadline);
+            CancellationToken.set(token);
+            try {
+                response = flight.execute("/", task);
+            } catch (ZeitgeistError e) {
+                error = e;
+            }
+        }
+
+        Caller finish() throws InterruptedException {
+            join(10000);
+            assertFalse("caller did not finish", isAlive());
+            return this;
+        }
+    }
+
+    /**
+     * Waits until the number of callers wait for the leader.
+     * @param collapsed
+     * @throws InterruptedException
+     */
+    private void awaitCollapsed(long collapsed) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (flight.getCollapsed() < collapsed) {
+            assertTrue("callers did not join", System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Waits until the task was executed the number of times.
+     * @param count
+     * @throws InterruptedException
+     */
+    private void awaitExecutions(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (executions.get() < count) {
+            assertTrue("task was not executed", System.currentTimeMillis() < end);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        SingleFlight.Task task = task(null);
+        Caller leader = new Caller(task, null, null);
+        awaitExecutions(1);
+        Caller[] followers = new Caller[3];
+        for (int i = 0; i < followers.length; i++) {
+            followers[i] = new Caller(task, null, null);
+        }
+        awaitCollapsed(3);
+        proceed.countDown();
+
+        Response response = leader.finish().response;
+        assertEquals(1, response.getId());
+        for (Caller follower : followers) {
+            Response copy = follower.finish().response;
+            assertNotNull(copy);
+            assertNotSame(response, copy);
+            assertEquals(1, copy.getId());
+        }
+        assertEquals(1, executions.get());
+        assertEquals(3, flight.getCollapsed());
+    }
+
+    @Test
+    public void sequentialCallsAreNotCoalesced() throws Exception {
+        proceed.countDown();
+        SingleFlight.Task task = task(null);
+        assertEquals(1, flight.execute("/", task).getId());
+        assertEquals(2, flight.execute("/", task).getId());
+        assertEquals(0, flight.getCollapsed());
+    }
+
+    @Test
+    public void differentKeysAreNotCoalesced() throws Exception {
+        SingleFlight.Task task = task(null);
+        Caller leader = new Caller(task, null, null);
+        awaitExecutions(1);
+        proceed.countDown();
+        flight.execute("/other", task);
+        leader.finish();
+        assertEquals(2, executions.get());
+        assertEquals(0, flight.getCollapsed());
+    }
+
+    @Test
+    public void errorOfTheLeaderIsShared() throws Exception {
+        ZeitgeistError failure = new ZeitgeistError("failed");
+        SingleFlight.Task task = task(failure);
+        Caller leader = new Caller(task, null, null);
+        awaitExecutions(1);
+        Caller follower = new Caller(task, null, null);
+        awaitCollapsed(1);
+        proceed.countDown();
+
+        assertSame(failure, leader.finish().error);
+        assertSame(failure, follower.finish().error);
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void followerRetriesIfOnlyTheLeaderWasCancelled() throws Exception {
+        SingleFlight.Task task = task(new CancelledError());
+        Caller leader = new Caller(task, null, null);
+        awaitExecutions(1);
+        Caller follower = new Caller(task, null, new CancellationToken());
+        awaitCollapsed(1);
+        proceed.countDown();
+
+        assertTrue(leader.finish().error instanceof CancelledError);
+        follower.finish();
+        assertNull(follower.error);
+        assertEquals(2, follower.response.getId()); // executed again
+    }
+
+    @Test
+    public void cancelledFollowerDoesNotRetry() throws Exception {
+        SingleFlight.Task task = task(new CancelledError());
+        Caller leader = new Caller(task, null, null);
+        awaitExecutions(1);
+        CancellationToken token = new CancellationToken();
+        Caller follower = new Caller(task, null, token);
+        awaitCollapsed(1);
+        token.cancel();
+        proceed.countDown();
+
+        leader.finish();
+        assertTrue(follower.finish().error instanceof CancelledError);
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void cancelledFollowerStopsWaiting() throws Exception {
+        SingleFlight.Task task = task(null);
+        Caller leader = new Caller(task, null, null);
+        awaitExecutions(1);
+        CancellationToken token = new CancellationToken();
+        Caller follower = new Caller(task, null, token);
+        awaitCollapsed(1);
+        token.cancel();
+
+        assertTrue(follower.finish().error instanceof CancelledError);
+        assertTrue(leader.isAlive()); // still waiting for proceed
+        proceed.countDown();
+        assertEquals(1, leader.finish().response.getId());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void followerRetriesIfOnlyTheLeaderDeadlineExpired() throws Exception {
+        SingleFlight.Task task = task(new DeadlineExceededError());
+        Caller leader = new Caller(task, null, null);
+        awaitExecutions(1);
+        Caller follower = new Caller(task, Deadline.after(10, TimeUnit.SECONDS), null);
+        awaitCollapsed(1);
+        proceed.countDown();
+
+        assertTrue(leader.finish().error instanceof DeadlineExceededError);
+        follower.finish();
+        assertNull(follower.error);
+        assertEquals(2, follower.response.getId());
+    }
+
+    @Test
+    public void followerGivesUpAtItsDeadline() throws Exception {
+        SingleFlight.Task task = task(null);
+        Caller leader = new Caller(task, null, null);
+        awaitExecutions(1);
+        Caller follower = new Caller(task, Deadline.after(50, TimeUnit.MILLISECONDS), null);
+
+        assertTrue(follower.finish().error instanceof DeadlineExceededError);
+        assertTrue(leader.isAlive()); // still waiting for proceed
+        proceed.countDown();
+        assertEquals(1, leader.finish().response.getId());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void uncheckedFailureOfTheLeaderFailsFollowers() throws Exception {
+        final SingleFlight.Task inner = task(null);
+        final SingleFlight.Task task = new SingleFlight.Task() {
+            public Response execute() throws ZeitgeistError {
+                inner.execute(); // waits for proceed
+                throw new IllegalStateException("bug");
+            }
+        };
+        final Throwable[] leaderFailure = new Throwable[1];
+        Thread leader = new Thread() {
+            public void run() {
+                try {
+                    flight.execute("/", task);
+                } catch (Throwable e) {
+                    leaderFailure[0] = e;
+                }
+            }
+        };
+        leader.start();
+        awaitExecutions(1);
+        Caller follower = new Caller(task, null, null);
+        awaitCollapsed(1);
+        proceed.countDown();
+
+        leader.join(10000);
+        assertTrue(leaderFailure[0] instanceof IllegalStateException);
+        assertNotNull(follower.finish().error);
+        assertEquals(1, executions.get());
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests sharing and replacement of tags in the tag dictionary.
+ */
+public class TagDictionaryTest {
+    @Test
+    public void sizeIsRoundedUpToPowerOfTwo() {
+        assertEquals(4096, new TagDictionary().size());
+        assertEquals(8, new TagDictionary(5).size());
+        assertEquals(8, new TagDictionary(8).size());
+        assertEquals(1, new TagDictionary(0).size());
+    }
+
+    @Test
+    public void identicalTagsShareOneInstance() {
+        TagDictionary dictionary = new TagDictionary(16);
+        Tag tag = dictionary.get(7, "cat", 3);
+        assertSame(tag, dictionary.get(7, "cat", 3));
+        assertEquals(7, tag.getId());
+        assertEquals("cat", tag.getName());
+        assertEquals(3, tag.getCount());
+    }
+
+    @Test
+    public void changedTagReplacesSlot() {
+        TagDictionary dictionary = new TagDictionary(16);
+        Tag tag = dictionary.get(7, "cat", 3);
+        Tag counted = dictionary.get(7, "cat", 4);
+        assertNotSame(tag, counted);
+        assertEquals(4, counted.getCount());
+        Tag renamed = dictionary.get(7, "cats", 4);
+        assertEquals("cats", renamed.getName());
+        assertSame(renamed, dictionary.get(7, "cats", 4));
+    }
+
+    @Test
+    public void nullNames() {
+        TagDictionary dictionary = new TagDictionary(16);
+        Tag tag = dictionary.get(7, null, 3);
+        assertSame(tag, dictionary.get(7, null, 3));
+        assertEquals("cat", dictionary.get(7, "cat", 3).getName());
+    }
+
+    @Test
+    public void collidingIdsEvictEachOther() {
+        TagDictionary dictionary = new TagDictionary(16);
+        Tag first = dictionary.get(5, "cat", 1);
+        Tag second = dictionary.get(5 + 16, "dog", 2); // same slot
+        assertEquals(21, second.getId());
+        assertEquals("dog", second.getName());
+
+        Tag again = dictionary.get(5, "cat", 1);
+        assertNotSame(first, again); // evicted, but still the correct tag
+        assertEquals(5, again.getId());
+        assertEquals("cat", again.getName());
+        assertEquals(1, again.getCount());
+    }
+
+    @Test
+    public void neighbouringIdsDoNotCollide() {
+        TagDictionary dictionary = new TagDictionary(16);
+        Tag first = dictionary.get(5, "cat", 1);
+        dictionary.get(6, "dog", 2);
+        assertSame(first, dictionary.get(5, "cat", 1));
+    }
+
+    @Test
+    public void decodedItemsShareTags() throws Exception {
+        GsonCodec codec = new GsonCodec("http://localhost");
+        Response response = codec.decode(new StringReader("{\"items\":[" +
+                "{\"id\":2,\"type\":\"image\",\"tags\":[{\"id\":7,\"tagname\":\"cat\",\"count\":3}]}," +
+                "{\"id\":1,\"type\":\"image\",\"tags\":[{\"id\":7,\"tagname\":\"cat\",\"count\":3}]}" +
+                "]}"));
+        List<Item> items = response.getItems();
+        assertEquals(2, items.size());
+        assertSame(items.get(0).getTags().get(0), items.get(1).getTags().get(0));
+    }
+}
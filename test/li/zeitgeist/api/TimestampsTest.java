@@ -0,0 +1,111 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+
+/**
+ * Tests the fixed-format ISO-8601 parser against Joda-Time.
+ */
+public class TimestampsTest {
+    /**
+     * Parses the timestamp.
+     * @param timestamp
+     * @return instant and offset
+     */
+    private static Timestamps.Parsed parse(String timestamp) {
+        Timestamps.Parsed parsed = new Timestamps.Parsed();
+        Timestamps.parse(timestamp, parsed);
+        return parsed;
+    }
+
+    /**
+     * Asserts the instant and offset equal those parsed by Joda-Time.
+     * @param timestamp
+     */
+    private static void assertParsedLikeJoda(String timestamp) {
+        DateTime expected = DateTime.parse(timestamp);
+        Timestamps.Parsed parsed = parse(timestamp);
+        assertEquals(timestamp, expected.getMillis(), parsed.millis);
+        assertEquals(timestamp, expected.getZone().getOffset(expected.getMillis()), parsed.offset);
+    }
+
+    @Test
+    public void offsetWithColon() {
+        Timestamps.Parsed parsed = parse("2012-02-25T07:36:12+01:00");
+        assertEquals(new DateTime(2012, 2, 25, 6, 36, 12, DateTimeZone.UTC).getMillis(),
+                parsed.millis);
+        assertEquals(3600000, parsed.offset);
+    }
+
+    @Test
+    public void offsetForms() {
+        assertParsedLikeJoda("2012-02-25T07:36:12Z");
+        assertParsedLikeJoda("2012-02-25T07:36:12+01:00");
+        assertParsedLikeJoda("2012-02-25T07:36:12-05:30");
+        assertParsedLikeJoda("2012-02-25T07:36:12+0100");
+        assertParsedLikeJoda("2012-02-25T07:36:12-0530");
+        assertParsedLikeJoda("2012-02-25T07:36:12+01");
+        assertParsedLikeJoda("2012-02-25T07:36:12-00:00");
+    }
+
+    @Test
+    public void negativeOffset() {
+        assertEquals(-(5 * 60 + 30) * 60000, parse("2012-02-25T07:36:12-05:30").offset);
+    }
+
+    @Test
+    public void fractionOfSecond() {
+        assertParsedLikeJoda("2012-02-25T07:36:12.5+01:00");
+        assertParsedLikeJoda("2012-02-25T07:36:12.123Z");
+        assertParsedLikeJoda("2012-02-25T07:36:12.123456789-0530");
+    }
+
+    @Test
+    public void calendarEdges() {
+        assertParsedLikeJoda("2012-02-29T23:59:59+01:00");
+        assertParsedLikeJoda("2000-02-29T00:00:00Z");
+        assertParsedLikeJoda("1969-12-31T23:59:59.999Z");
+        assertParsedLikeJoda("1970-01-01T00:00:00Z");
+    }
+
+    @Test
+    public void withoutOffsetInDefaultZone() {
+        assertParsedLikeJoda("2012-02-25T07:36:12");
+        assertParsedLikeJoda("2012-07-25T07:36:12.250");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDayIsRejected() {
+        parse("2013-02-29T07:36:12+01:00");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidOffsetIsRejected() {
+        parse("2012-02-25T07:36:12+1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void garbageIsRejected() {
+        parse("yesterday");
+    }
+}
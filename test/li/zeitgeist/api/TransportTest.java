@@ -0,0 +1,124 @@
+/**
+ * Java Zeitgeist API
+ * Copyright (C) 2012  Matthias Hecker <http://apoc.cc/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package li.zeitgeist.api;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the transport request and response and which transport
+ * the configuration methods of the API apply to.
+ */
+public class TransportTest {
+    private static final URI LOCALHOST = URI.create("http://localhost/");
+
+    /**
+     * Handler counting its calls.
+     */
+    private static class CountingHandler implements TransportRequest.AbortHandler {
+        private final AtomicInteger aborts = new AtomicInteger();
+
+        public void onAbort() {
+            aborts.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void abortCallsHandlerOnce() {
+        TransportRequest request = new TransportRequest("GET", LOCALHOST);
+        CountingHandler handler = new CountingHandler();
+        request.setAbortHandler(handler);
+        request.abort();
+        request.abort();
+        assertTrue(request.isAborted());
+        assertEquals(1, handler.aborts.get());
+    }
+
+    @Test
+    public void handlerOfAbortedRequestIsCalledAtOnce() {
+        TransportRequest request = new TransportRequest("GET", LOCALHOST);
+        request.abort();
+        CountingHandler handler = new CountingHandler();
+        request.setAbortHandler(handler);
+        assertEquals(1, handler.aborts.get());
+    }
+
+    @Test
+    public void copyIsNeitherSentNorAborted() {
+        TransportRequest request = new TransportRequest("POST", LOCALHOST);
+        request.setHeader("Accept", "application/json");
+        request.markSent();
+        request.abort();
+
+        TransportRequest copy = request.copy();
+        assertEquals("POST", copy.getMethod());
+        assertEquals(LOCALHOST, copy.getUri());
+        assertEquals("application/json", copy.getHeaders().get("Accept"));
+        assertFalse(copy.isSent());
+        assertFalse(copy.isAborted());
+    }
+
+    @Test
+    public void charsetIsParsedFromContentType() {
+        assertEquals("utf-8", new TransportResponse(200, null,
+                "application/json; charset=utf-8", -1, null).getCharset());
+        assertEquals("ISO-8859-1", new TransportResponse(200, null,
+                "text/html;Charset=\"ISO-8859-1\"", -1, null).getCharset());
+        assertNull(new TransportResponse(200, null, "application/json", -1, null).getCharset());
+        assertNull(new TransportResponse(200, null, null, -1, null).getCharset());
+    }
+
+    @Test
+    public void poolConfigurationRequiresHttpClientTransport() {
+        ZeitgeistApi api = new ZeitgeistApi("http://localhost", "", "");
+        try {
+            api.setPoolTimeout(1000); // default transport
+            api.setTransport(new InMemoryTransport());
+            try {
+                api.setMaxConnections(Lane.READ, 8);
+                fail("expected an IllegalStateException");
+            } catch (IllegalStateException e) {
+                // the pool of the replaced transport is not used
+            }
+            try {
+                api.setConnectTimeout(1000);
+                fail("expected an IllegalStateException");
+            } catch (IllegalStateException e) {
+                // the in-memory transport has no timeouts
+            }
+        } finally {
+            api.shutdown();
+        }
+    }
+
+    @Test
+    public void timeoutsAreForwardedToUrlConnectionTransport() {
+        ZeitgeistApi api = new ZeitgeistApi("http://localhost", "", "");
+        try {
+            api.setTransport(new UrlConnectionTransport());
+            api.setConnectTimeout(1000);
+            api.setSocketTimeout(1000);
+        } finally {
+            api.shutdown();
+        }
+    }
+}